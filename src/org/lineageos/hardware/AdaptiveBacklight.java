@@ -19,7 +19,7 @@ package org.lineageos.hardware;
 
 import android.util.Log;
 
-import org.lineageos.internal.util.FileUtils;
+import lineageos.hardware.LineageHardwareManager;
 
 /**
  * Adaptive backlight support (this refers to technologies like NVIDIA SmartDimmer,
@@ -31,13 +31,20 @@ public class AdaptiveBacklight {
 
     private static final String FILE_CABC = "/sys/class/graphics/fb0/cabc";
 
+    private static final SysfsNode CABC = SysfsNode.get(FILE_CABC);
+
+    static {
+        HardwareListeners.watch(LineageHardwareManager.FEATURE_ADAPTIVE_BACKLIGHT, CABC);
+    }
+
     /**
      * Whether device supports an adaptive backlight technology.
      *
      * @return boolean Supported devices must return always true
      */
     public static boolean isSupported() {
-        return FileUtils.isFileReadable(FILE_CABC) && FileUtils.isFileWritable(FILE_CABC);
+        return HardwareCapabilities.isSupported(LineageHardwareManager.FEATURE_ADAPTIVE_BACKLIGHT,
+                () -> CABC.isReadable() && CABC.isWritable());
     }
 
     /**
@@ -47,7 +54,7 @@ public class AdaptiveBacklight {
      * the operation failed while reading the status; true in any other case.
      */
     public static boolean isEnabled() {
-        return Integer.parseInt(FileUtils.readOneLine(FILE_CABC)) > 0;
+        return CABC.readBoolean();
     }
 
     /**
@@ -58,6 +65,6 @@ public class AdaptiveBacklight {
      * failed; true in any other case.
      */
     public static boolean setEnabled(boolean status) {
-        return FileUtils.writeLine(FILE_CABC, status ? "1" : "0");
+        return CABC.writeInt(status ? 1 : 0);
     }
 }
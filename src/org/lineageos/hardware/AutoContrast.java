@@ -16,9 +16,7 @@
 
 package org.lineageos.hardware;
 
-import org.lineageos.internal.util.FileUtils;
-
-import android.util.Log;
+import lineageos.hardware.LineageHardwareManager;
 
 /**
  * Auto Contrast Optimization
@@ -29,13 +27,20 @@ public class AutoContrast {
 
     private static final String FILE_ACO = "/sys/class/graphics/fb0/aco";
 
+    private static final SysfsNode ACO = SysfsNode.get(FILE_ACO);
+
+    static {
+        HardwareListeners.watch(LineageHardwareManager.FEATURE_AUTO_CONTRAST, ACO);
+    }
+
     /**
      * Whether device supports ACO
      *
      * @return boolean Supported devices must return always true
      */
     public static boolean isSupported() {
-        return FileUtils.isFileReadable(FILE_ACO) && FileUtils.isFileWritable(FILE_ACO);
+        return HardwareCapabilities.isSupported(LineageHardwareManager.FEATURE_AUTO_CONTRAST,
+                () -> ACO.isReadable() && ACO.isWritable());
     }
 
     /**
@@ -45,12 +50,7 @@ public class AutoContrast {
      * the operation failed while reading the status; true in any other case.
      */
     public static boolean isEnabled() {
-        try {
-            return Integer.parseInt(FileUtils.readOneLine(FILE_ACO)) > 0;
-        } catch (Exception e) {
-            Log.e(TAG, e.getMessage(), e);
-        }
-        return false;
+        return ACO.readBoolean();
     }
 
     /**
@@ -61,7 +61,7 @@ public class AutoContrast {
      * failed; true in any other case.
      */
     public static boolean setEnabled(boolean status) {
-        return FileUtils.writeLine(FILE_ACO, status ? "1" : "0");
+        return ACO.writeInt(status ? 1 : 0);
     }
 
     /**
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2018 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lineageos.hardware;
+
+/**
+ * Device capability manifest
+ *
+ * The features a device supports are fixed when its hardware classes are
+ * built. A device can ship this class alongside them, written by hand or
+ * generated by its build, to declare those features, the nodes they use
+ * and the ranges of its tunables. Support and range queries are then
+ * answered without any I/O at boot, and the declarations are checked
+ * against the hardware in the background some time later.
+ *
+ * This dummy declares nothing, so everything is probed at runtime.
+ */
+public class CapabilityManifest {
+
+    /**
+     * Whether this is a real manifest. Real implementations must,
+     * of course, return true
+     */
+    public static boolean isAvailable() {
+        return false;
+    }
+
+    /**
+     * @return int A mask of the LineageHardwareManager.FEATURE_* bits of
+     * all supported features
+     */
+    public static int getSupportedFeatures() {
+        return 0;
+    }
+
+    /**
+     * @return String[] The paths of all nodes used by the supported
+     * features
+     */
+    public static String[] getNodePaths() {
+        return new String[0];
+    }
+
+    /**
+     * @return int The minimum vibrator intensity, or -1 to read it from
+     * the hardware
+     */
+    public static int getVibratorMinIntensity() {
+        return -1;
+    }
+
+    /**
+     * @return int The maximum vibrator intensity, or -1 to read it from
+     * the hardware
+     */
+    public static int getVibratorMaxIntensity() {
+        return -1;
+    }
+
+    /**
+     * @return int The default vibrator intensity, or -1 to read it from
+     * the hardware
+     */
+    public static int getVibratorDefaultIntensity() {
+        return -1;
+    }
+
+    /**
+     * @return int The minimum display color calibration value, or -1 for
+     * the built-in default
+     */
+    public static int getDisplayColorCalibrationMin() {
+        return -1;
+    }
+
+    /**
+     * @return int The maximum display color calibration value, or -1 for
+     * the built-in default
+     */
+    public static int getDisplayColorCalibrationMax() {
+        return -1;
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2018 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lineageos.hardware;
+
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Change listeners for the value of one tunable
+ *
+ * Once the tunable has told which node holds the value, the node is
+ * watched by NodeWatcher while at least one listener is registered. Change
+ * signals arriving within COALESCE_MILLIS of each other are folded into a
+ * single read of the value, and listeners are only called if the value
+ * actually differs from the one they were last told about.
+ *
+ * The node is read and listeners are called on NodeExecutor, under the key
+ * of the tunable, so a read never overtakes a pending write of the same
+ * tunable. Listeners must not block.
+ */
+final class ChangeNotifier<T> {
+
+    private static final long COALESCE_MILLIS = 50;
+
+    private final String mKey;
+    private final Supplier<T> mReader;
+
+    /* Only changed while holding this, null until the tunable calls setNode() */
+    private volatile SysfsNode mNode;
+
+    private final CopyOnWriteArrayList<Consumer<T>> mListeners = new CopyOnWriteArrayList<>();
+    private final AtomicBoolean mPending = new AtomicBoolean();
+
+    /* Only accessed by tasks for mKey, which run one at a time */
+    private T mLastValue;
+
+    /**
+     * @param key the NodeExecutor key of the tunable
+     * @param reader reads the current value, e.g. isEnabled()
+     */
+    ChangeNotifier(String key, Supplier<T> reader) {
+        mKey = key;
+        mReader = reader;
+    }
+
+    SysfsNode getNode() {
+        return mNode;
+    }
+
+    /**
+     * Watch the node that holds the value, instead of any node given before.
+     */
+    synchronized void setNode(SysfsNode node) {
+        if (mNode == node) {
+            return;
+        }
+        if (mNode != null && !mListeners.isEmpty()) {
+            NodeWatcher.unwatch(this);
+        }
+        mNode = node;
+        if (!mListeners.isEmpty()) {
+            NodeWatcher.watch(this);
+        }
+    }
+
+    synchronized void register(Consumer<T> listener) {
+        if (mListeners.addIfAbsent(listener) && mListeners.size() == 1) {
+            // Learn the starting value before any change can be reported.
+            // This also loads the tunable class, which then calls setNode().
+            NodeExecutor.executor(mKey).execute(() -> mLastValue = mReader.get());
+            if (mNode != null) {
+                NodeWatcher.watch(this);
+            }
+        }
+    }
+
+    synchronized void unregister(Consumer<T> listener) {
+        if (mListeners.remove(listener) && mListeners.isEmpty() && mNode != null) {
+            NodeWatcher.unwatch(this);
+        }
+    }
+
+    /**
+     * Signal that the node may have changed. Cheap, and safe to call from
+     * any thread.
+     */
+    void onChanged() {
+        if (mPending.compareAndSet(false, true)) {
+            NodeExecutor.schedule(mKey, this::dispatch, COALESCE_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void dispatch() {
+        mPending.set(false);
+        T value = mReader.get();
+        if (Objects.equals(value, mLastValue)) {
+            return;
+        }
+        mLastValue = value;
+        for (Consumer<T> listener : mListeners) {
+            listener.accept(value);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2018 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lineageos.hardware;
+
+import android.util.Log;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Latest-wins writer for slider driven tunables
+ *
+ * While coalescing is enabled, submit() only records the value, and
+ * NodeExecutor writes whatever value is the latest at most maxRate times
+ * per second, under the key of the tunable so that the writes stay in
+ * order with its other deferred I/O. Intermediate values that were
+ * overwritten before their turn are never written. With a rate of 0, every
+ * value is written synchronously.
+ */
+final class CoalescingWriter<T> {
+
+    private static final String TAG = "CoalescingWriter";
+
+    /* Every writer ever created, they are all held in static fields */
+    private static final CopyOnWriteArrayList<CoalescingWriter<?>> sWriters =
+            new CopyOnWriteArrayList<>();
+
+    private final String mKey;
+    private final Predicate<T> mSink;
+
+    private final Object mLock = new Object();
+
+    private volatile long mIntervalNanos;
+
+    private T mPending;
+    private boolean mScheduled;
+    private boolean mLastResult = true;
+    private long mLastWriteNanos;
+
+    /**
+     * @param key the NodeExecutor key of the tunable
+     * @param sink performs the actual write, returning whether it succeeded
+     */
+    CoalescingWriter(String key, Predicate<T> sink) {
+        mKey = key;
+        mSink = sink;
+        sWriters.add(this);
+    }
+
+    /**
+     * Flush every writer, e.g. before shutdown.
+     *
+     * @return false if the last write of any writer failed
+     */
+    static boolean flushAll() {
+        boolean result = true;
+        for (CoalescingWriter<?> writer : sWriters) {
+            result &= writer.flush();
+        }
+        return result;
+    }
+
+    /**
+     * Set the maximum number of writes per second, 0 to write synchronously.
+     */
+    void setMaxRate(int writesPerSecond) {
+        if (writesPerSecond <= 0) {
+            mIntervalNanos = 0;
+            flush();
+        } else {
+            mIntervalNanos = TimeUnit.SECONDS.toNanos(1) / writesPerSecond;
+        }
+    }
+
+    boolean isCoalescing() {
+        return mIntervalNanos != 0;
+    }
+
+    /**
+     * Write a value, or queue it if coalescing is enabled.
+     *
+     * @return the result of the write, or true if the value was queued
+     */
+    boolean submit(T value) {
+        long interval = mIntervalNanos;
+        if (interval == 0) {
+            boolean result = mSink.test(value);
+            synchronized (mLock) {
+                mLastResult = result;
+            }
+            return result;
+        }
+        synchronized (mLock) {
+            mPending = value;
+            if (!mScheduled) {
+                mScheduled = true;
+                long delay = Math.max(0, mLastWriteNanos + interval - System.nanoTime());
+                NodeExecutor.schedule(mKey, this::drain, delay, TimeUnit.NANOSECONDS);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Write the pending value right away, if any, and wait for it.
+     *
+     * @return the result of the last write
+     */
+    boolean flush() {
+        if (NodeExecutor.isCurrentKey(mKey)) {
+            drain();
+        } else {
+            try {
+                CompletableFuture.runAsync(this::drain, NodeExecutor.executor(mKey)).get();
+            } catch (ExecutionException e) {
+                Log.e(TAG, "Failed to flush pending write", e);
+                return false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        synchronized (mLock) {
+            return mLastResult;
+        }
+    }
+
+    private void drain() {
+        T value;
+        synchronized (mLock) {
+            value = mPending;
+            mPending = null;
+            mScheduled = false;
+            if (value == null) {
+                return;
+            }
+            mLastWriteNanos = System.nanoTime();
+        }
+        boolean result = mSink.test(value);
+        synchronized (mLock) {
+            mLastResult = result;
+        }
+    }
+}
@@ -16,9 +16,7 @@
 
 package org.lineageos.hardware;
 
-import org.lineageos.internal.util.FileUtils;
-
-import android.util.Log;
+import lineageos.hardware.LineageHardwareManager;
 
 /**
  * Color enhancement support
@@ -29,13 +27,20 @@ public class ColorEnhancement {
 
     private static final String FILE_CE = "/sys/class/graphics/fb0/color_enhance";
 
+    private static final SysfsNode CE = SysfsNode.get(FILE_CE);
+
+    static {
+        HardwareListeners.watch(LineageHardwareManager.FEATURE_COLOR_ENHANCEMENT, CE);
+    }
+
     /**
      * Whether device supports an color enhancement technology.
      *
      * @return boolean Supported devices must return always true
      */
     public static boolean isSupported() {
-        return FileUtils.isFileReadable(FILE_CE) && FileUtils.isFileWritable(FILE_CE);
+        return HardwareCapabilities.isSupported(LineageHardwareManager.FEATURE_COLOR_ENHANCEMENT,
+                () -> CE.isReadable() && CE.isWritable());
     }
 
     /**
@@ -45,12 +50,7 @@ public class ColorEnhancement {
      * the operation failed while reading the status; true in any other case.
      */
     public static boolean isEnabled() {
-        try {
-            return Integer.parseInt(FileUtils.readOneLine(FILE_CE)) > 0;
-        } catch (Exception e) {
-            Log.e(TAG, e.getMessage(), e);
-        }
-        return false;
+        return CE.readBoolean();
     }
 
     /**
@@ -61,6 +61,6 @@ public class ColorEnhancement {
      * failed; true in any other case.
      */
     public static boolean setEnabled(boolean status) {
-        return FileUtils.writeLine(FILE_CE, status ? "1" : "0");
+        return CE.writeInt(status ? 1 : 0);
     }
 }
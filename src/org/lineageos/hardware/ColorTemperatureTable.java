@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2018 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lineageos.hardware;
+
+/**
+ * Color temperature lookup table for ColorBalance
+ *
+ * Maps every color balance value to a color temperature and to the matching
+ * DisplayColorCalibration gains, and color temperatures back to balance
+ * values. The table is built once for the range reported by ColorBalance,
+ * so that conversions in either direction are plain array reads, and only
+ * rebuilt after invalidate().
+ *
+ * A balance of zero is the neutral white point, the minimum value maps to
+ * MIN_KELVIN and the maximum value to MAX_KELVIN, linearly in between.
+ * Gains follow a blackbody approximation, normalized so that the neutral
+ * white point is unity and the strongest channel is never attenuated.
+ */
+public final class ColorTemperatureTable {
+
+    public static final int NEUTRAL_KELVIN = 6500;
+    public static final int MIN_KELVIN = 2000;
+    public static final int MAX_KELVIN = 10000;
+
+    /* Resolution of the inverse lookup */
+    private static final int KELVIN_STEP = 10;
+
+    private static volatile ColorTemperatureTable sInstance;
+
+    private final int mMinValue;
+    private final int mMaxValue;
+
+    private final int[] mTemperatures;
+    private final long[] mGains;
+    private final int[] mValues;
+
+    private ColorTemperatureTable(int minValue, int maxValue, int minGain, int maxGain) {
+        mMinValue = minValue;
+        mMaxValue = maxValue;
+        mTemperatures = new int[maxValue - minValue + 1];
+        mGains = new long[mTemperatures.length];
+
+        double[] neutral = blackbody(NEUTRAL_KELVIN);
+        double[] rgb = new double[3];
+        for (int value = minValue; value <= maxValue; value++) {
+            int kelvin = toKelvin(value);
+            double[] raw = blackbody(kelvin);
+            double peak = 0;
+            for (int i = 0; i < 3; i++) {
+                rgb[i] = raw[i] / neutral[i];
+                peak = Math.max(peak, rgb[i]);
+            }
+            mTemperatures[value - minValue] = kelvin;
+            mGains[value - minValue] = PackedColors.pack(
+                    scale(rgb[0] / peak, minGain, maxGain),
+                    scale(rgb[1] / peak, minGain, maxGain),
+                    scale(rgb[2] / peak, minGain, maxGain));
+        }
+
+        mValues = new int[(MAX_KELVIN - MIN_KELVIN) / KELVIN_STEP + 1];
+        for (int i = 0; i < mValues.length; i++) {
+            mValues[i] = toValue(MIN_KELVIN + i * KELVIN_STEP);
+        }
+    }
+
+    /**
+     * Get the table for the ColorBalance and DisplayColorCalibration ranges.
+     * It is built on first use, after that this is a single volatile read.
+     */
+    public static ColorTemperatureTable getInstance() {
+        ColorTemperatureTable table = sInstance;
+        if (table == null) {
+            synchronized (ColorTemperatureTable.class) {
+                table = sInstance;
+                if (table == null) {
+                    int minValue = ColorBalance.getMinValue();
+                    int maxValue = Math.max(minValue, ColorBalance.getMaxValue());
+                    table = new ColorTemperatureTable(minValue, maxValue,
+                            DisplayColorCalibration.getMinValue(),
+                            DisplayColorCalibration.getMaxValue());
+                    sInstance = table;
+                }
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Drop the table, so that the next getInstance() builds it again for
+     * the ranges reported at that time.
+     */
+    public static void invalidate() {
+        sInstance = null;
+    }
+
+    public int getMinValue() {
+        return mMinValue;
+    }
+
+    public int getMaxValue() {
+        return mMaxValue;
+    }
+
+    /**
+     * @return the color temperature in Kelvin for a color balance value
+     */
+    public int getTemperature(int value) {
+        return mTemperatures[clampValue(value) - mMinValue];
+    }
+
+    /**
+     * @return the DisplayColorCalibration gains for a color balance value,
+     * red in bits 32-47, green in bits 16-31 and blue in bits 0-15
+     */
+    public long getGains(int value) {
+        return mGains[clampValue(value) - mMinValue];
+    }
+
+    /**
+     * @return the color balance value closest to a color temperature in Kelvin
+     */
+    public int getValue(int kelvin) {
+        int clamped = Math.max(MIN_KELVIN, Math.min(MAX_KELVIN, kelvin));
+        return mValues[(clamped - MIN_KELVIN + KELVIN_STEP / 2) / KELVIN_STEP];
+    }
+
+    private int clampValue(int value) {
+        return Math.max(mMinValue, Math.min(mMaxValue, value));
+    }
+
+    private int toKelvin(int value) {
+        if (value < 0 && mMinValue < 0) {
+            return NEUTRAL_KELVIN - (NEUTRAL_KELVIN - MIN_KELVIN) * value / mMinValue;
+        } else if (value > 0 && mMaxValue > 0) {
+            return NEUTRAL_KELVIN + (MAX_KELVIN - NEUTRAL_KELVIN) * value / mMaxValue;
+        }
+        return NEUTRAL_KELVIN;
+    }
+
+    private int toValue(int kelvin) {
+        double value;
+        if (kelvin < NEUTRAL_KELVIN) {
+            value = (double) mMinValue * (NEUTRAL_KELVIN - kelvin) / (NEUTRAL_KELVIN - MIN_KELVIN);
+        } else {
+            value = (double) mMaxValue * (kelvin - NEUTRAL_KELVIN) / (MAX_KELVIN - NEUTRAL_KELVIN);
+        }
+        return clampValue((int) Math.round(value));
+    }
+
+    private static int scale(double gain, int minGain, int maxGain) {
+        return minGain + (int) Math.round(gain * (maxGain - minGain));
+    }
+
+    /**
+     * Approximate sRGB color of a blackbody radiator, Tanner Helland's fit
+     * of the CIE 1964 10 degree color matching data.
+     */
+    private static double[] blackbody(int kelvin) {
+        double t = kelvin / 100.0;
+        double red, green, blue;
+        if (t <= 66) {
+            red = 255;
+            green = 99.4708025861 * Math.log(t) - 161.1195681661;
+        } else {
+            red = 329.698727446 * Math.pow(t - 60, -0.1332047592);
+            green = 288.1221695283 * Math.pow(t - 60, -0.0755148492);
+        }
+        if (t >= 66) {
+            blue = 255;
+        } else if (t <= 19) {
+            blue = 0;
+        } else {
+            blue = 138.5177312231 * Math.log(t - 10) - 305.0447927307;
+        }
+        return new double[] { clamp(red), clamp(green), clamp(blue) };
+    }
+
+    private static double clamp(double channel) {
+        return Math.max(1, Math.min(255, channel));
+    }
+}
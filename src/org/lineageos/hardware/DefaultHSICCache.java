@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2018 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lineageos.hardware;
+
+import android.util.SparseArray;
+
+import lineageos.hardware.DisplayMode;
+import lineageos.hardware.HSIC;
+
+import java.util.function.Function;
+
+/**
+ * Default picture adjustment values per display mode
+ *
+ * Filled lazily through the loader PictureAdjustment registers, and dropped
+ * by DisplayModeControl whenever the mode changes, which also prefetches the
+ * defaults of the new mode. This lives outside of both classes so that
+ * either of them can be replaced by a device implementation on its own.
+ */
+final class DefaultHSICCache {
+
+    private static final int NO_MODE = -1;
+
+    /* Keyed by DisplayMode id, null values are cached as well */
+    private static final SparseArray<HSIC> sDefaults = new SparseArray<>();
+
+    private static volatile Function<DisplayMode, HSIC> sLoader;
+
+    private DefaultHSICCache() {
+        // This class is not supposed to be instantiated
+    }
+
+    static void setLoader(Function<DisplayMode, HSIC> loader) {
+        sLoader = loader;
+    }
+
+    /**
+     * @return the cached default for a mode, loading it if needed, or null
+     * if there is none or no loader was registered
+     */
+    static HSIC get(DisplayMode mode) {
+        Function<DisplayMode, HSIC> loader = sLoader;
+        if (loader == null) {
+            return null;
+        }
+        int key = mode != null ? mode.id : NO_MODE;
+        synchronized (sDefaults) {
+            int index = sDefaults.indexOfKey(key);
+            if (index >= 0) {
+                return sDefaults.valueAt(index);
+            }
+        }
+        HSIC hsic = loader.apply(mode);
+        synchronized (sDefaults) {
+            sDefaults.put(key, hsic);
+        }
+        return hsic;
+    }
+
+    static void invalidate() {
+        synchronized (sDefaults) {
+            sDefaults.clear();
+        }
+    }
+}
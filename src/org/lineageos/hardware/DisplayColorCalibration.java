@@ -17,7 +17,7 @@
 
 package org.lineageos.hardware;
 
-import org.lineageos.internal.util.FileUtils;
+import lineageos.hardware.LineageHardwareManager;
 
 public class DisplayColorCalibration {
 
@@ -25,19 +25,27 @@ public class DisplayColorCalibration {
 
     private static final String COLOR_FILE = "/sys/class/graphics/fb0/rgb";
 
+    private static final SysfsNode COLOR = SysfsNode.get(COLOR_FILE);
+
     private static final int MIN = 255;
     private static final int MAX = 32768;
 
+    private static final ThreadLocal<int[]> sColors = ThreadLocal.withInitial(() -> new int[3]);
+
     public static boolean isSupported() {
-        return FileUtils.isFileReadable(COLOR_FILE) && FileUtils.isFileWritable(COLOR_FILE);
+        return HardwareCapabilities.isSupported(
+                LineageHardwareManager.FEATURE_DISPLAY_COLOR_CALIBRATION,
+                () -> COLOR.isReadable() && COLOR.isWritable());
     }
 
     public static int getMaxValue()  {
-        return MAX;
+        int max = CapabilityManifest.getDisplayColorCalibrationMax();
+        return max >= 0 ? max : MAX;
     }
 
     public static int getMinValue()  {
-        return MIN;
+        int min = CapabilityManifest.getDisplayColorCalibrationMin();
+        return min >= 0 ? min : MIN;
     }
 
     public static int getDefValue() {
@@ -45,11 +53,53 @@ public class DisplayColorCalibration {
     }
 
     public static String getCurColors()  {
-        return FileUtils.readOneLine(COLOR_FILE);
+        return COLOR.readLine();
+    }
+
+    public static boolean getCurColors(int[] rgb) {
+        return COLOR.readInts(rgb) == 3;
+    }
+
+    public static long getCurColorsPacked() {
+        int[] rgb = sColors.get();
+        return getCurColors(rgb) ? packColors(rgb[0], rgb[1], rgb[2]) : -1;
     }
 
     public static boolean setColors(String colors) {
-        return FileUtils.writeLine(COLOR_FILE, colors);
+        String[] rgb = colors.trim().split("\\s+");
+        if (rgb.length != 3) {
+            return false;
+        }
+        try {
+            return writeColors(packColors(Integer.parseInt(rgb[0]),
+                    Integer.parseInt(rgb[1]), Integer.parseInt(rgb[2])));
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    public static boolean setColors(int[] rgb) {
+        return setColorsPacked(packColors(rgb[0], rgb[1], rgb[2]));
+    }
+
+    public static boolean setColorsPacked(long colors) {
+        return writeColors(colors);
+    }
+
+    public static long packColors(int red, int green, int blue) {
+        return PackedColors.pack(clamp(red), clamp(green), clamp(blue));
+    }
+
+    private static boolean writeColors(long colors) {
+        int[] rgb = sColors.get();
+        rgb[0] = PackedColors.red(colors);
+        rgb[1] = PackedColors.green(colors);
+        rgb[2] = PackedColors.blue(colors);
+        return COLOR.writeInts(rgb, 3);
+    }
+
+    private static int clamp(int value) {
+        return Math.max(getMinValue(), Math.min(getMaxValue(), value));
     }
 
 }
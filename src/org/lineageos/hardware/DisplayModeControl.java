@@ -19,6 +19,8 @@ package org.lineageos.hardware;
 
 import lineageos.hardware.DisplayMode;
 
+import java.util.concurrent.atomic.AtomicReference;
+
 /**
  * Display Modes API
  *
@@ -33,6 +35,21 @@ import lineageos.hardware.DisplayMode;
 
 public class DisplayModeControl {
 
+    /* Default mode changes are persisted at most this often per second */
+    private static final int DEFAULT_MODE_PERSIST_RATE = 1;
+
+    private static final CoalescingWriter<DisplayMode> DEFAULT_MODE_WRITER =
+            new CoalescingWriter<>(DisplayModeControl.class.getName(),
+                    DisplayModeControl::writeDefaultMode);
+
+    static {
+        DEFAULT_MODE_WRITER.setMaxRate(DEFAULT_MODE_PERSIST_RATE);
+    }
+
+    private static volatile DisplayMode[] sAvailableModes;
+    /* The default mode not yet known to be persisted, if any */
+    private static final AtomicReference<DisplayMode> sDefaultMode = new AtomicReference<>();
+
     /**
      * All HAF classes should export this boolean.
      * Real implementations must, of course, return true
@@ -47,9 +64,17 @@ public class DisplayModeControl {
      *
      * It is the responsibility of the upper layers to
      * map the name to a human-readable format or perform translation.
+     *
+     * The list is only queried once, and the returned array is shared
+     * between all callers, so it must not be modified.
      */
     public static DisplayMode[] getAvailableModes() {
-        return new DisplayMode[0];
+        DisplayMode[] modes = sAvailableModes;
+        if (modes == null) {
+            modes = readAvailableModes();
+            sAvailableModes = modes;
+        }
+        return modes;
     }
 
     /**
@@ -65,9 +90,28 @@ public class DisplayModeControl {
      * string identifier. Returns true on success, false for
      * failure. It is up to the implementation to determine
      * if this mode is valid.
+     *
+     * Only the panel write happens on the calling thread. The picture
+     * adjustment defaults of the new mode are prefetched in parallel, and
+     * making the mode the default is written behind, coalesced with any
+     * default changes that follow quickly. HardwareIo.flush() writes it
+     * right away.
      */
     public static boolean setMode(DisplayMode mode, boolean makeDefault) {
-        return false;
+        if (!applyMode(mode)) {
+            return false;
+        }
+        DefaultHSICCache.invalidate();
+        NodeExecutor.executor(PictureAdjustment.class.getName()).execute(() -> {
+            if (PictureAdjustment.isSupported()) {
+                DefaultHSICCache.get(mode);
+            }
+        });
+        if (makeDefault) {
+            sDefaultMode.set(mode);
+            DEFAULT_MODE_WRITER.submit(mode);
+        }
+        return true;
     }
 
     /**
@@ -75,6 +119,32 @@ public class DisplayModeControl {
      * string identifier. Can return null if there is no default.
      */
     public static DisplayMode getDefaultMode() {
+        DisplayMode mode = sDefaultMode.get();
+        return mode != null ? mode : readDefaultMode();
+    }
+
+    private static boolean writeDefaultMode(DisplayMode mode) {
+        if (persistDefaultMode(mode)) {
+            return true;
+        }
+        // Report what is actually persisted, unless a newer mode is pending
+        sDefaultMode.compareAndSet(mode, null);
+        return false;
+    }
+
+    private static DisplayMode[] readAvailableModes() {
+        return new DisplayMode[0];
+    }
+
+    private static boolean applyMode(DisplayMode mode) {
+        return false;
+    }
+
+    private static boolean persistDefaultMode(DisplayMode mode) {
+        return false;
+    }
+
+    private static DisplayMode readDefaultMode() {
         return null;
     }
 }
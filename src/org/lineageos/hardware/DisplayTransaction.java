@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2018 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lineageos.hardware;
+
+import android.util.Log;
+
+import lineageos.hardware.HSIC;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Batched display pipeline update
+ *
+ * Collects changes to several display tunables, e.g. when applying a
+ * LiveDisplay profile, and applies all of them in a single task on
+ * NodeExecutor. Transactions run one at a time, in the order they were
+ * applied, but not in order with the setters of HardwareIo. Changes are
+ * applied in dependency order: adaptive backlight first since other
+ * features may require it, reading mode last since it overrides the color
+ * pipeline.
+ *
+ * If any step fails, the steps that were already applied are rolled back
+ * to the values they had before, on a best-effort basis. Only tunables
+ * that are supported on the device should be added.
+ */
+public final class DisplayTransaction {
+
+    private static final String TAG = "DisplayTransaction";
+
+    private final List<Step<?>> mSteps;
+
+    private DisplayTransaction(List<Step<?>> steps) {
+        mSteps = steps;
+    }
+
+    /**
+     * Apply all changes on NodeExecutor.
+     *
+     * @return a future completing with false if any step failed, in which
+     * case the applied steps have been rolled back
+     */
+    public CompletableFuture<Boolean> apply() {
+        return NodeExecutor.submit(DisplayTransaction.class.getName(), this::applyNow);
+    }
+
+    boolean applyNow() {
+        for (int i = 0; i < mSteps.size(); i++) {
+            if (!mSteps.get(i).apply()) {
+                Log.w(TAG, "Step " + i + " failed, rolling back");
+                for (int j = i - 1; j >= 0; j--) {
+                    mSteps.get(j).rollback();
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class Step<T> {
+        private final Supplier<T> mGetter;
+        private final Predicate<T> mSetter;
+        private final T mValue;
+        private T mPrevious;
+
+        Step(Supplier<T> getter, Predicate<T> setter, T value) {
+            mGetter = getter;
+            mSetter = setter;
+            mValue = value;
+        }
+
+        boolean apply() {
+            try {
+                mPrevious = mGetter.get();
+            } catch (RuntimeException e) {
+                // Unknown state, nothing to roll back to
+                mPrevious = null;
+            }
+            try {
+                return mSetter.test(mValue);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Could not apply " + mValue, e);
+                return false;
+            }
+        }
+
+        void rollback() {
+            if (mPrevious == null) {
+                return;
+            }
+            try {
+                mSetter.test(mPrevious);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Could not roll back to " + mPrevious, e);
+            }
+        }
+    }
+
+    public static final class Builder {
+        private Boolean mAdaptiveBacklight;
+        private Integer mColorBalance;
+        private String mColors;
+        private HSIC mPictureAdjustment;
+        private Boolean mReadingEnhancement;
+
+        public Builder setAdaptiveBacklight(boolean enabled) {
+            mAdaptiveBacklight = enabled;
+            return this;
+        }
+
+        public Builder setColorBalance(int value) {
+            mColorBalance = value;
+            return this;
+        }
+
+        public Builder setDisplayColorCalibration(String colors) {
+            mColors = colors;
+            return this;
+        }
+
+        public Builder setPictureAdjustment(HSIC hsic) {
+            mPictureAdjustment = hsic;
+            return this;
+        }
+
+        public Builder setReadingEnhancement(boolean enabled) {
+            mReadingEnhancement = enabled;
+            return this;
+        }
+
+        public DisplayTransaction build() {
+            List<Step<?>> steps = new ArrayList<>();
+            if (mAdaptiveBacklight != null) {
+                steps.add(new Step<>(AdaptiveBacklight::isEnabled,
+                        AdaptiveBacklight::setEnabled, mAdaptiveBacklight));
+            }
+            if (mColorBalance != null) {
+                steps.add(new Step<>(ColorBalance::getValue,
+                        ColorBalance::setValue, mColorBalance));
+            }
+            if (mColors != null) {
+                steps.add(new Step<>(DisplayColorCalibration::getCurColors,
+                        DisplayColorCalibration::setColors, mColors));
+            }
+            if (mPictureAdjustment != null) {
+                steps.add(new Step<>(PictureAdjustment::getHSIC,
+                        PictureAdjustment::setHSIC, mPictureAdjustment));
+            }
+            if (mReadingEnhancement != null) {
+                steps.add(new Step<>(ReadingEnhancement::isEnabled,
+                        ReadingEnhancement::setEnabled, mReadingEnhancement));
+            }
+            return new DisplayTransaction(steps);
+        }
+    }
+}
@@ -0,0 +1,452 @@
+/*
+ * Copyright (C) 2018 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lineageos.hardware;
+
+import android.util.Log;
+
+import lineageos.hardware.LineageHardwareManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Capability snapshot
+ *
+ * Probing a tunable usually means a handful of stat/access calls, and the
+ * answer does not change while the system is running. The result of every
+ * probe is kept in a single bitmask, using the LineageHardwareManager feature
+ * bits, so that isSupported() only pays for the probe once.
+ *
+ * The upper 32 bits of the state hold the features that have been probed,
+ * the lower 32 bits the ones that turned out to be supported.
+ *
+ * getSupportedFeatures() probes all tunables concurrently on a small pool,
+ * so that it takes about as long as the slowest probe rather than the sum
+ * of all of them. Some drivers block for a long time on reads, so a probe
+ * that does not finish within PROBE_TIMEOUT_NANOS counts as unsupported
+ * until it does finish in the background and records its real answer. A
+ * probe that throws is run again in the background, with growing delays, up
+ * to MAX_RETRIES times. There is never more than one probe of a feature in
+ * flight, so a driver that never returns holds on to at most one thread of
+ * the pool instead of piling up retries until the pool is exhausted.
+ *
+ * If the device ships a CapabilityManifest, the snapshot starts out filled
+ * from it and nothing is probed at boot. Instead, every feature is probed
+ * once on the same pool a while after startup, and any feature the
+ * manifest got wrong is logged and corrected. These probes get the same
+ * deadlines and retries as the ones at boot.
+ *
+ * Deadlines and retry delays run on HardwareTimer, which never does sysfs
+ * I/O that could hold them up.
+ */
+public final class HardwareCapabilities {
+
+    private static final String TAG = "HardwareCapabilities";
+
+    private static final int PROBE_THREADS = 4;
+
+    private static final long PROBE_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+
+    /* Bounds the wait for probes that can't start because the pool is stuck */
+    private static final long MAX_WAIT_NANOS = 4 * PROBE_TIMEOUT_NANOS;
+
+    /* Delay before the first background retry, doubled for every further one */
+    private static final long RETRY_DELAY_MILLIS = 1000;
+    private static final int MAX_RETRIES = 4;
+
+    /* Delay of the check of the manifest against the hardware */
+    private static final long VERIFY_DELAY_MILLIS = 30000;
+
+    private static final int ALL_FEATURES = LineageHardwareManager.FEATURE_ADAPTIVE_BACKLIGHT
+            | LineageHardwareManager.FEATURE_AUTO_CONTRAST
+            | LineageHardwareManager.FEATURE_COLOR_BALANCE
+            | LineageHardwareManager.FEATURE_COLOR_ENHANCEMENT
+            | LineageHardwareManager.FEATURE_DISPLAY_COLOR_CALIBRATION
+            | LineageHardwareManager.FEATURE_DISPLAY_MODES
+            | LineageHardwareManager.FEATURE_HIGH_TOUCH_SENSITIVITY
+            | LineageHardwareManager.FEATURE_KEY_DISABLE
+            | LineageHardwareManager.FEATURE_PICTURE_ADJUSTMENT
+            | LineageHardwareManager.FEATURE_READING_ENHANCEMENT
+            | LineageHardwareManager.FEATURE_SUNLIGHT_ENHANCEMENT
+            | LineageHardwareManager.FEATURE_TOUCHSCREEN_GESTURES
+            | LineageHardwareManager.FEATURE_TOUCH_HOVERING
+            | LineageHardwareManager.FEATURE_VIBRATOR;
+
+    private static final AtomicLong sState = new AtomicLong(fromManifest());
+
+    private static final AtomicBoolean sVerifyScheduled = new AtomicBoolean();
+
+    /* The probe in flight for every feature bit, if any */
+    private static final AtomicReferenceArray<Probe> sInFlight =
+            new AtomicReferenceArray<>(Integer.SIZE);
+
+    /*
+     * Fresh probes ask the hardware even if the feature was probed before.
+     * The flag is only looked up while one of them is running.
+     */
+    private static final AtomicInteger sFreshProbes = new AtomicInteger();
+    private static final ThreadLocal<Boolean> sFresh = new ThreadLocal<>();
+
+    private HardwareCapabilities() {
+        // This class is not supposed to be instantiated
+    }
+
+    private static final class ProbeExecutor {
+        static final ThreadPoolExecutor POOL = create();
+
+        private static ThreadPoolExecutor create() {
+            AtomicInteger count = new AtomicInteger();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(PROBE_THREADS, PROBE_THREADS,
+                    10, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+                        Thread thread = new Thread(r,
+                                "LineageHardwareProbe-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            // Probing mostly happens once, don't keep the threads around
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+        }
+    }
+
+    /**
+     * Look up a feature, probing it first if that didn't happen yet.
+     *
+     * @param feature a LineageHardwareManager.FEATURE_* bit
+     * @param probe checks the hardware for the feature
+     */
+    static boolean isSupported(int feature, BooleanSupplier probe) {
+        long state = sState.get();
+        if ((probed(state) & feature) != 0
+                && (sFreshProbes.get() == 0 || sFresh.get() == null)) {
+            return (supported(state) & feature) != 0;
+        }
+        boolean supported = probe.getAsBoolean();
+        record(feature, supported);
+        return supported;
+    }
+
+    /**
+     * Get the features supported by this device, probing all tunables
+     * that weren't probed yet.
+     *
+     * @return int A mask of LineageHardwareManager.FEATURE_* bits
+     */
+    public static int getSupportedFeatures() {
+        if (CapabilityManifest.isAvailable() && sVerifyScheduled.compareAndSet(false, true)) {
+            HardwareTimer.get().schedule(HardwareCapabilities::verifyManifest,
+                    VERIFY_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        probeAll();
+        return supported(sState.get());
+    }
+
+    /**
+     * Drop the snapshot and probe all tunables again. Only needed if
+     * nodes can appear after boot, e.g. when a driver is a loadable module.
+     *
+     * @return int A mask of LineageHardwareManager.FEATURE_* bits
+     */
+    public static int reprobe() {
+        sState.set(0);
+        return getSupportedFeatures();
+    }
+
+    private static long fromManifest() {
+        if (!CapabilityManifest.isAvailable()) {
+            return 0;
+        }
+        return ((long) ALL_FEATURES << 32)
+                | (CapabilityManifest.getSupportedFeatures() & ALL_FEATURES & 0xffffffffL);
+    }
+
+    /**
+     * Probe every feature on the pool and compare the answers with the
+     * manifest as they come in. Only schedules work, so it never blocks the
+     * timer thread it runs on. Features that still have a probe in flight
+     * are left to that probe.
+     */
+    private static void verifyManifest() {
+        final int declared = CapabilityManifest.getSupportedFeatures();
+        final long giveUpNanos = System.nanoTime() + MAX_WAIT_NANOS;
+        for (Probe stale : newProbes()) {
+            final Probe probe = stale.fresh();
+            if (launch(probe) != probe) {
+                continue;
+            }
+            probe.mResult.whenComplete((supported, error) -> {
+                if (error != null) {
+                    Log.e(TAG, "Could not verify feature " + probe.mFeature, error);
+                    followUp(probe, 0);
+                } else if (supported != ((declared & probe.mFeature) != 0)) {
+                    Log.w(TAG, "Manifest is wrong about feature " + probe.mFeature
+                            + ", it is " + (supported ? "supported" : "unsupported"));
+                    record(probe.mFeature, supported);
+                }
+            });
+            onDeadline(probe, giveUpNanos, () -> Log.w(TAG, "Verifying feature "
+                    + probe.mFeature + " timed out, keeping the manifest for now"));
+        }
+        ProbeExecutor.POOL.execute(() -> {
+            for (String path : CapabilityManifest.getNodePaths()) {
+                if (!SysfsNode.get(path).exists()) {
+                    Log.w(TAG, "Manifest lists " + path + ", which does not exist");
+                }
+            }
+        });
+    }
+
+    /**
+     * Run action on the timer thread if the probe is still running at its
+     * deadline, as await() would have computed it.
+     */
+    private static void onDeadline(Probe probe, long giveUpNanos, Runnable action) {
+        if (probe.mResult.isDone()) {
+            return;
+        }
+        long remaining = probe.deadline(giveUpNanos) - System.nanoTime();
+        if (remaining > 0) {
+            HardwareTimer.get().schedule(() -> onDeadline(probe, giveUpNanos, action),
+                    remaining, TimeUnit.NANOSECONDS);
+        } else {
+            action.run();
+        }
+    }
+
+    private static void probeAll() {
+        long state = sState.get();
+        List<Probe> probes = new ArrayList<>();
+        for (Probe probe : newProbes()) {
+            if ((probed(state) & probe.mFeature) == 0) {
+                // Wait for a probe that is already in flight, if there is one
+                probes.add(launch(probe));
+            }
+        }
+
+        long giveUpNanos = System.nanoTime() + MAX_WAIT_NANOS;
+        for (Probe probe : probes) {
+            try {
+                record(probe.mFeature, probe.await(giveUpNanos));
+            } catch (TimeoutException e) {
+                Log.w(TAG, "Probe for feature " + probe.mFeature
+                        + " timed out, assuming unsupported for now");
+                record(probe.mFeature, false);
+                followUp(probe, 0);
+            } catch (ExecutionException e) {
+                Log.e(TAG, "Probe for feature " + probe.mFeature + " failed", e.getCause());
+                record(probe.mFeature, false);
+                followUp(probe, 0);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Submit a probe to the pool, unless a probe of the same feature is
+     * still in flight.
+     *
+     * @return the probe in flight for the feature, which is the given one
+     * if it was submitted
+     */
+    private static Probe launch(Probe probe) {
+        int index = Integer.numberOfTrailingZeros(probe.mFeature);
+        while (true) {
+            Probe current = sInFlight.get(index);
+            if (current != null) {
+                return current;
+            }
+            if (sInFlight.compareAndSet(index, null, probe)) {
+                break;
+            }
+        }
+        probe.mResult.whenComplete((supported, error) ->
+                sInFlight.compareAndSet(index, probe, null));
+        ProbeExecutor.POOL.execute(probe);
+        return probe;
+    }
+
+    /**
+     * Record the answer of a probe that timed out or failed whenever it
+     * gets one. If it throws, run it again in the background after the
+     * retry delay. A probe that is merely slow is left alone, running it
+     * again would only tie up another thread of the pool.
+     *
+     * @param attempt the number of retries that led to this probe
+     */
+    private static void followUp(Probe probe, int attempt) {
+        probe.mResult.whenComplete((supported, error) -> {
+            if (error == null) {
+                record(probe.mFeature, supported);
+            } else if (probe.mRetrying.compareAndSet(false, true)) {
+                HardwareTimer.get().schedule(() -> retry(probe, attempt + 1),
+                        RETRY_DELAY_MILLIS << attempt, TimeUnit.MILLISECONDS);
+            }
+        });
+    }
+
+    private static void retry(Probe previous, int attempt) {
+        if (attempt > MAX_RETRIES) {
+            Log.e(TAG, "Giving up on feature " + previous.mFeature + " after "
+                    + MAX_RETRIES + " retries");
+            return;
+        }
+        Probe probe = previous.fresh();
+        if (launch(probe) == probe) {
+            followUp(probe, attempt);
+        }
+    }
+
+    private static Probe[] newProbes() {
+        return new Probe[] {
+            new Probe(LineageHardwareManager.FEATURE_ADAPTIVE_BACKLIGHT,
+                    AdaptiveBacklight::isSupported),
+            new Probe(LineageHardwareManager.FEATURE_AUTO_CONTRAST,
+                    AutoContrast::isSupported),
+            new Probe(LineageHardwareManager.FEATURE_COLOR_BALANCE,
+                    ColorBalance::isSupported),
+            new Probe(LineageHardwareManager.FEATURE_COLOR_ENHANCEMENT,
+                    ColorEnhancement::isSupported),
+            new Probe(LineageHardwareManager.FEATURE_DISPLAY_COLOR_CALIBRATION,
+                    DisplayColorCalibration::isSupported),
+            new Probe(LineageHardwareManager.FEATURE_DISPLAY_MODES,
+                    DisplayModeControl::isSupported),
+            new Probe(LineageHardwareManager.FEATURE_HIGH_TOUCH_SENSITIVITY,
+                    HighTouchSensitivity::isSupported),
+            new Probe(LineageHardwareManager.FEATURE_KEY_DISABLE,
+                    KeyDisabler::isSupported),
+            new Probe(LineageHardwareManager.FEATURE_PICTURE_ADJUSTMENT,
+                    PictureAdjustment::isSupported),
+            new Probe(LineageHardwareManager.FEATURE_READING_ENHANCEMENT,
+                    ReadingEnhancement::isSupported),
+            new Probe(LineageHardwareManager.FEATURE_SUNLIGHT_ENHANCEMENT,
+                    SunlightEnhancement::isSupported),
+            new Probe(LineageHardwareManager.FEATURE_TOUCHSCREEN_GESTURES,
+                    TouchscreenGestures::isSupported),
+            new Probe(LineageHardwareManager.FEATURE_TOUCH_HOVERING,
+                    TouchscreenHovering::isSupported),
+            new Probe(LineageHardwareManager.FEATURE_VIBRATOR,
+                    VibratorHW::isSupported) };
+    }
+
+    private static final class Probe implements Runnable {
+        final int mFeature;
+        private final BooleanSupplier mSupplier;
+        final CompletableFuture<Boolean> mResult = new CompletableFuture<>();
+        final AtomicBoolean mRetrying = new AtomicBoolean();
+        private final boolean mFresh;
+        private volatile boolean mStarted;
+        private volatile long mStartNanos;
+
+        Probe(int feature, BooleanSupplier supplier) {
+            this(feature, supplier, false);
+        }
+
+        private Probe(int feature, BooleanSupplier supplier, boolean fresh) {
+            mFeature = feature;
+            mSupplier = supplier;
+            mFresh = fresh;
+        }
+
+        /**
+         * @return a new probe for the same feature, which asks the hardware
+         * even if the feature was probed before
+         */
+        Probe fresh() {
+            return new Probe(mFeature, mSupplier, true);
+        }
+
+        @Override
+        public void run() {
+            mStartNanos = System.nanoTime();
+            mStarted = true;
+            if (mFresh) {
+                sFreshProbes.incrementAndGet();
+                sFresh.set(Boolean.TRUE);
+            }
+            try {
+                mResult.complete(mSupplier.getAsBoolean());
+            } catch (Throwable t) {
+                // Whoever waits for the result must not wait forever
+                mResult.completeExceptionally(t);
+            } finally {
+                if (mFresh) {
+                    sFresh.remove();
+                    sFreshProbes.decrementAndGet();
+                }
+            }
+        }
+
+        /**
+         * @return PROBE_TIMEOUT_NANOS after the probe started, or giveUpNanos
+         * if it did not start yet
+         */
+        long deadline(long giveUpNanos) {
+            return mStarted ? mStartNanos + PROBE_TIMEOUT_NANOS : giveUpNanos;
+        }
+
+        /**
+         * Wait until PROBE_TIMEOUT_NANOS after the probe started, or until
+         * giveUpNanos if it is still queued behind stuck probes by then.
+         */
+        boolean await(long giveUpNanos) throws ExecutionException, InterruptedException,
+                TimeoutException {
+            while (true) {
+                boolean started = mStarted;
+                long deadline = deadline(giveUpNanos);
+                try {
+                    return mResult.get(Math.max(0, deadline - System.nanoTime()),
+                            TimeUnit.NANOSECONDS);
+                } catch (TimeoutException e) {
+                    if (started || !mStarted) {
+                        throw e;
+                    }
+                    // Started while we were waiting, give it its full time
+                }
+            }
+        }
+    }
+
+    private static void record(int feature, boolean supported) {
+        long state, update;
+        do {
+            state = sState.get();
+            int mask = supported ? supported(state) | feature : supported(state) & ~feature;
+            update = ((probed(state) | feature) << 32) | (mask & 0xffffffffL);
+        } while (!sState.compareAndSet(state, update));
+    }
+
+    private static long probed(long state) {
+        return state >>> 32;
+    }
+
+    private static int supported(long state) {
+        return (int) state;
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2018 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lineageos.hardware;
+
+import lineageos.hardware.DisplayMode;
+import lineageos.hardware.HSIC;
+import lineageos.hardware.LineageHardwareManager;
+import lineageos.hardware.TouchscreenGesture;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Asynchronous access to the hardware tunables
+ *
+ * Each method calls the setter of the same name on the tunable class and
+ * returns right away, so a slow driver never blocks the binder thread that
+ * asked for the change. Only the setters present in the dummy classes are
+ * used, so this works the same with any device implementation of them, and
+ * lives outside of all of them for that reason.
+ *
+ * Setters run on NodeExecutor, one at a time per tunable in submission
+ * order, and in parallel with other tunables. Coalesced writes and
+ * transitions of a tunable use the same key, so they stay in order with
+ * its setters.
+ *
+ * The slider driven tunables, color balance, display color calibration
+ * and vibrator intensity, can be coalesced with setCoalescingRate(): their
+ * setters then only record the value, and the latest one is written at
+ * most at the given rate. flush() writes whatever is still held back.
+ */
+public final class HardwareIo {
+
+    private static final CoalescingWriter<Integer> COLOR_BALANCE =
+            new CoalescingWriter<>(ColorBalance.class.getName(), ColorBalance::setValue);
+    private static final CoalescingWriter<String> DISPLAY_COLOR_CALIBRATION =
+            new CoalescingWriter<>(DisplayColorCalibration.class.getName(),
+                    DisplayColorCalibration::setColors);
+    private static final CoalescingWriter<Integer> VIBRATOR =
+            new CoalescingWriter<>(VibratorHW.class.getName(), VibratorHW::setIntensity);
+
+    private HardwareIo() {
+        // This class is not supposed to be instantiated
+    }
+
+    public static CompletableFuture<Boolean> setAdaptiveBacklightEnabled(boolean enabled) {
+        return perTunable(AdaptiveBacklight.class, () -> AdaptiveBacklight.setEnabled(enabled));
+    }
+
+    public static CompletableFuture<Boolean> setAutoContrastEnabled(boolean enabled) {
+        return perTunable(AutoContrast.class, () -> AutoContrast.setEnabled(enabled));
+    }
+
+    /**
+     * @return completes with true once the value is recorded while coalescing
+     */
+    public static CompletableFuture<Boolean> setColorBalance(int value) {
+        return perTunable(ColorBalance.class, () -> COLOR_BALANCE.submit(value));
+    }
+
+    public static CompletableFuture<Boolean> setColorEnhancementEnabled(boolean enabled) {
+        return perTunable(ColorEnhancement.class, () -> ColorEnhancement.setEnabled(enabled));
+    }
+
+    /**
+     * @param colors the colors in the format DisplayColorCalibration.setColors() expects
+     * @return completes with true once the value is recorded while coalescing
+     */
+    public static CompletableFuture<Boolean> setDisplayColorCalibration(String colors) {
+        return perTunable(DisplayColorCalibration.class,
+                () -> DISPLAY_COLOR_CALIBRATION.submit(colors));
+    }
+
+    public static CompletableFuture<Boolean> setDisplayMode(DisplayMode mode,
+            boolean makeDefault) {
+        return perTunable(DisplayModeControl.class,
+                () -> DisplayModeControl.setMode(mode, makeDefault));
+    }
+
+    public static CompletableFuture<Boolean> setHighTouchSensitivityEnabled(boolean enabled) {
+        return perTunable(HighTouchSensitivity.class,
+                () -> HighTouchSensitivity.setEnabled(enabled));
+    }
+
+    public static CompletableFuture<Boolean> setKeysDisabled(boolean disabled) {
+        return perTunable(KeyDisabler.class, () -> KeyDisabler.setActive(disabled));
+    }
+
+    public static CompletableFuture<Boolean> setPictureAdjustment(HSIC hsic) {
+        return perTunable(PictureAdjustment.class, () -> PictureAdjustment.setHSIC(hsic));
+    }
+
+    public static CompletableFuture<Boolean> setReadingEnhancementEnabled(boolean enabled) {
+        return perTunable(ReadingEnhancement.class, () -> ReadingEnhancement.setEnabled(enabled));
+    }
+
+    public static CompletableFuture<Boolean> setSunlightEnhancementEnabled(boolean enabled) {
+        return perTunable(SunlightEnhancement.class,
+                () -> SunlightEnhancement.setEnabled(enabled));
+    }
+
+    public static CompletableFuture<Boolean> setTouchscreenGestureEnabled(
+            TouchscreenGesture gesture, boolean enabled) {
+        return perTunable(TouchscreenGestures.class,
+                () -> TouchscreenGestures.setGestureEnabled(gesture, enabled));
+    }
+
+    public static CompletableFuture<Boolean> setTouchscreenHoveringEnabled(boolean enabled) {
+        return perTunable(TouchscreenHovering.class,
+                () -> TouchscreenHovering.setEnabled(enabled));
+    }
+
+    /**
+     * @return completes with true once the value is recorded while coalescing
+     */
+    public static CompletableFuture<Boolean> setVibratorIntensity(int intensity) {
+        return perTunable(VibratorHW.class, () -> VIBRATOR.submit(intensity));
+    }
+
+    /**
+     * Coalesce the writes of a slider driven tunable, e.g. while the user
+     * drags the slider, or go back to writing every value.
+     *
+     * @param feature LineageHardwareManager.FEATURE_COLOR_BALANCE,
+     * FEATURE_DISPLAY_COLOR_CALIBRATION or FEATURE_VIBRATOR
+     * @param writesPerSecond the maximum number of writes per second, or 0
+     * to write every value, after writing any value still held back
+     */
+    public static void setCoalescingRate(int feature, int writesPerSecond) {
+        switch (feature) {
+            case LineageHardwareManager.FEATURE_COLOR_BALANCE:
+                COLOR_BALANCE.setMaxRate(writesPerSecond);
+                break;
+            case LineageHardwareManager.FEATURE_DISPLAY_COLOR_CALIBRATION:
+                DISPLAY_COLOR_CALIBRATION.setMaxRate(writesPerSecond);
+                break;
+            case LineageHardwareManager.FEATURE_VIBRATOR:
+                VIBRATOR.setMaxRate(writesPerSecond);
+                break;
+            default:
+                throw new IllegalArgumentException("Feature " + feature
+                        + " can't be coalesced");
+        }
+    }
+
+    /**
+     * Write all values that are still held back by coalescing, such as
+     * the last slider values or the default display mode, and wait for
+     * them. To be called when a slider is released, and before shutdown.
+     *
+     * @return false if any of the writes failed
+     */
+    public static boolean flush() {
+        return CoalescingWriter.flushAll();
+    }
+
+    private static CompletableFuture<Boolean> perTunable(Class<?> tunable,
+            Supplier<Boolean> setter) {
+        return NodeExecutor.submit(tunable.getName(), setter);
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2018 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.lineageos.hardware;
+
+import lineageos.hardware.LineageHardwareManager;
+
+import java.util.function.Consumer;
+
+/**
+ * Change listeners for the hardware tunables
+ *
+ * Listeners are told about changes of a tunable, whether they are made
+ * through this library, by another process or by the kernel. The value is
+ * read with the getter of the tunable class, so this works the same with
+ * any device implementation of it, and lives outside of all of them for
+ * that reason.
+ *
+ * Changes are noticed by watching the node that holds the value. A tunable
+ * class that uses SysfsNode tells which node that is with watch(); without
+ * that, listeners are only told about the initial value.
+ *
+ * Listeners are called on a shared thread and must not block.
+ */
+public final class HardwareListeners {
+
+    private static final ChangeNotifier<Boolean> ADAPTIVE_BACKLIGHT =
+            new ChangeNotifier<>(AdaptiveBacklight.class.getName(),
+                    AdaptiveBacklight::isEnabled);
+    private static final ChangeNotifier<Boolean> AUTO_CONTRAST =
+            new ChangeNotifier<>(AutoContrast.class.getName(), AutoContrast::isEnabled);
+    private static final ChangeNotifier<Boolean> COLOR_ENHANCEMENT =
+            new ChangeNotifier<>(ColorEnhancement.class.getName(),
+                    ColorEnhancement::isEnabled);
+    private static final ChangeNotifier<Boolean> READING_ENHANCEMENT =
+            new ChangeNotifier<>(ReadingEnhancement.class.getName(),
+                    ReadingEnhancement::isEnabled);
+    private static final ChangeNotifier<Integer> VIBRATOR =
+            new ChangeNotifier<>(VibratorHW.class.getName(), VibratorHW::getCurIntensity);
+
+    private HardwareListeners() {
+        // This class is not supposed to be instantiated
+    }
+
+    public static void registerAdaptiveBacklightListener(Consumer<Boolean> listener) {
+        ADAPTIVE_BACKLIGHT.register(listener);
+    }
+
+    public static void unregisterAdaptiveBacklightListener(Consumer<Boolean> listener) {
+        ADAPTIVE_BACKLIGHT.unregister(listener);
+    }
+
+    public static void registerAutoContrastListener(Consumer<Boolean> listener) {
+        AUTO_CONTRAST.register(listener);
+    }
+
+    public static void unregisterAutoContrastListener(Consumer<Boolean> listener) {
+        AUTO_CONTRAST.unregister(listener);
+    }
+
+    public static void registerColorEnhancementListener(Consumer<Boolean> listener) {
+        COLOR_ENHANCEMENT.register(listener);
+    }
+
+    public static void unregisterColorEnhancementListener(Consumer<Boolean> listener) {
+        COLOR_ENHANCEMENT.unregister(listener);
+    }
+
+    public static void registerReadingEnhancementListener(Consumer<Boolean> listener) {
+        READING_ENHANCEMENT.register(listener);
+    }
+
+    public static void unregisterReadingEnhancementListener(Consumer<Boolean> listener) {
+        READING_ENHANCEMENT.unregister(listener);
+    }
+
+    public static void registerVibratorIntensityListener(Consumer<Integer> listener) {
+        VIBRATOR.register(listener);
+    }
+
+    public static void unregisterVibratorIntensityListener(Consumer<Integer> listener) {
+        VIBRATOR.unregister(listener);
+    }
+
+    /**
+     * Called by tunable classes, usually from their static initializer, to
+     * tell which node holds the value of a feature.
+     *
+     * @param feature a LineageHardwareManager.FEATURE_* bit
+     */
+    static void watch(int feature, SysfsNode node) {
+        switch (feature) {
+            case LineageHardwareManager.FEATURE_ADAPTIVE_BACKLIGHT:
+                ADAPTIVE_BACKLIGHT.setNode(node);
+                break;
+            case LineageHardwareManager.FEATURE_AUTO_CONTRAST:
+                AUTO_CONTRAST.setNode(node);
+                break;
+            case LineageHardwareManager.FEATURE_COLOR_ENHANCEMENT:
+                COLOR_ENHANCEMENT.setNode(node);
+                break;
+            case LineageHardwareManager.FEATURE_READING_ENHANCEMENT:
+                READING_ENHANCEMENT.setNode(node);
+                break;
+            case LineageHardwareManager.FEATURE_VIBRATOR:
+                VIBRATOR.setNode(node);
+                break;
+            default:
+                throw new IllegalArgumentException("No listeners for feature " + feature);
+        }
+    }
+}
@@ -0,0 +1,418 @@
+/*
+ * Copyright (C) 2018 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lineageos.hardware;
+
+import android.util.Log;
+
+import lineageos.hardware.HSIC;
+import lineageos.hardware.TouchscreenGesture;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saved state of all tunables, for restoring them at boot
+ *
+ * The framework keeps a snapshot up to date as the user changes settings,
+ * and at boot restores everything from one small file instead of looking
+ * up and applying every setting on its own.
+ *
+ * The file starts with a magic number and a format version, followed by a
+ * mask of the fields present and the fields themselves, about 50 bytes in
+ * all.
+ *
+ * restore() applies independent tunables in parallel. Tunables that depend
+ * on each other are applied in order: adaptive backlight before the
+ * features that may require it, and the color pipeline from color balance
+ * through calibration and picture adjustment to reading mode, which
+ * overrides it.
+ */
+public final class HardwareSnapshot {
+
+    private static final String TAG = "HardwareSnapshot";
+
+    private static final int MAGIC = 0x4c485753; // "LHWS"
+    private static final int VERSION = 1;
+
+    private static final int FIELD_ADAPTIVE_BACKLIGHT = 1 << 0;
+    private static final int FIELD_AUTO_CONTRAST = 1 << 1;
+    private static final int FIELD_COLOR_ENHANCEMENT = 1 << 2;
+    private static final int FIELD_READING_ENHANCEMENT = 1 << 3;
+    private static final int FIELD_SUNLIGHT_ENHANCEMENT = 1 << 4;
+    private static final int FIELD_COLOR_BALANCE = 1 << 5;
+    private static final int FIELD_COLORS = 1 << 6;
+    private static final int FIELD_HSIC = 1 << 7;
+    private static final int FIELD_VIBRATOR_INTENSITY = 1 << 8;
+    private static final int FIELD_GESTURES = 1 << 9;
+
+    /* The boolean features are stored as one byte, bit n for field 1 << n */
+    private static final int BOOLEAN_FIELDS = FIELD_ADAPTIVE_BACKLIGHT | FIELD_AUTO_CONTRAST
+            | FIELD_COLOR_ENHANCEMENT | FIELD_READING_ENHANCEMENT | FIELD_SUNLIGHT_ENHANCEMENT;
+
+    private final int mFields;
+    private final int mBooleans;
+    private final int mColorBalance;
+    private final long mColors;
+    private final HSIC mHSIC;
+    private final int mVibratorIntensity;
+    private final BitSet mGestures;
+
+    private HardwareSnapshot(int fields, int booleans, int colorBalance, long colors, HSIC hsic,
+            int vibratorIntensity, BitSet gestures) {
+        mFields = fields;
+        mBooleans = booleans;
+        mColorBalance = colorBalance;
+        mColors = colors;
+        mHSIC = hsic;
+        mVibratorIntensity = vibratorIntensity;
+        mGestures = gestures;
+    }
+
+    /**
+     * Read the current state of every supported tunable that can be read
+     * back from the hardware. Touchscreen gestures can't, they have to be
+     * added with a Builder.
+     */
+    public static HardwareSnapshot capture() {
+        Builder builder = new Builder();
+        if (AdaptiveBacklight.isSupported()) {
+            builder.setAdaptiveBacklight(AdaptiveBacklight.isEnabled());
+        }
+        if (AutoContrast.isSupported()) {
+            builder.setAutoContrast(AutoContrast.isEnabled());
+        }
+        if (ColorEnhancement.isSupported()) {
+            builder.setColorEnhancement(ColorEnhancement.isEnabled());
+        }
+        if (ReadingEnhancement.isSupported()) {
+            builder.setReadingEnhancement(ReadingEnhancement.isEnabled());
+        }
+        if (SunlightEnhancement.isSupported()) {
+            builder.setSunlightEnhancement(SunlightEnhancement.isEnabled());
+        }
+        if (ColorBalance.isSupported()) {
+            builder.setColorBalance(ColorBalance.getValue());
+        }
+        if (DisplayColorCalibration.isSupported()) {
+            String colors = DisplayColorCalibration.getCurColors();
+            if (colors != null) {
+                builder.setDisplayColorCalibration(colors);
+            }
+        }
+        if (PictureAdjustment.isSupported()) {
+            HSIC hsic = PictureAdjustment.getHSIC();
+            if (hsic != null) {
+                builder.setPictureAdjustment(hsic);
+            }
+        }
+        if (VibratorHW.isSupported()) {
+            int intensity = VibratorHW.getCurIntensity();
+            if (intensity >= 0) {
+                builder.setVibratorIntensity(intensity);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Apply the snapshot. Fields of tunables that are not supported are
+     * skipped.
+     *
+     * @return a future completing with false if any tunable could not be
+     * restored, the others are restored regardless
+     */
+    public CompletableFuture<Boolean> restore() {
+        final long start = System.nanoTime();
+        List<CompletableFuture<Boolean>> results = new ArrayList<>();
+
+        // Features that may need adaptive backlight wait for it
+        CompletableFuture<Boolean> backlight = CompletableFuture.completedFuture(true);
+        if (has(FIELD_ADAPTIVE_BACKLIGHT) && AdaptiveBacklight.isSupported()) {
+            backlight = HardwareIo.setAdaptiveBacklightEnabled(get(FIELD_ADAPTIVE_BACKLIGHT));
+            results.add(backlight);
+        }
+        if (has(FIELD_AUTO_CONTRAST) && AutoContrast.isSupported()) {
+            boolean enabled = get(FIELD_AUTO_CONTRAST);
+            results.add(AutoContrast.isAdaptiveBacklightRequired()
+                    ? backlight.thenCompose(
+                            ignored -> HardwareIo.setAutoContrastEnabled(enabled))
+                    : HardwareIo.setAutoContrastEnabled(enabled));
+        }
+        if (has(FIELD_SUNLIGHT_ENHANCEMENT) && SunlightEnhancement.isSupported()) {
+            boolean enabled = get(FIELD_SUNLIGHT_ENHANCEMENT);
+            results.add(SunlightEnhancement.isAdaptiveBacklightRequired()
+                    ? backlight.thenCompose(
+                            ignored -> HardwareIo.setSunlightEnhancementEnabled(enabled))
+                    : HardwareIo.setSunlightEnhancementEnabled(enabled));
+        }
+
+        // The color pipeline, one stage after the other
+        CompletableFuture<Boolean> colors = CompletableFuture.completedFuture(true);
+        if (has(FIELD_COLOR_BALANCE) && ColorBalance.isSupported()) {
+            colors = colors.thenCompose(ignored -> HardwareIo.setColorBalance(mColorBalance));
+            results.add(colors);
+        }
+        if (has(FIELD_COLORS) && DisplayColorCalibration.isSupported()) {
+            final String rgb = PackedColors.red(mColors) + " " + PackedColors.green(mColors)
+                    + " " + PackedColors.blue(mColors);
+            colors = colors.thenCompose(
+                    ignored -> HardwareIo.setDisplayColorCalibration(rgb));
+            results.add(colors);
+        }
+        if (has(FIELD_HSIC) && PictureAdjustment.isSupported()) {
+            colors = colors.thenCompose(ignored -> HardwareIo.setPictureAdjustment(mHSIC));
+            results.add(colors);
+        }
+        if (has(FIELD_READING_ENHANCEMENT) && ReadingEnhancement.isSupported()) {
+            boolean enabled = get(FIELD_READING_ENHANCEMENT);
+            colors = colors.thenCompose(
+                    ignored -> HardwareIo.setReadingEnhancementEnabled(enabled));
+            results.add(colors);
+        }
+
+        // Everything else is independent
+        if (has(FIELD_COLOR_ENHANCEMENT) && ColorEnhancement.isSupported()) {
+            results.add(HardwareIo.setColorEnhancementEnabled(get(FIELD_COLOR_ENHANCEMENT)));
+        }
+        if (has(FIELD_VIBRATOR_INTENSITY) && VibratorHW.isSupported()) {
+            results.add(HardwareIo.setVibratorIntensity(mVibratorIntensity));
+        }
+        if (has(FIELD_GESTURES) && TouchscreenGestures.isSupported()) {
+            for (TouchscreenGesture gesture : TouchscreenGestures.getAvailableGestures()) {
+                results.add(HardwareIo.setTouchscreenGestureEnabled(gesture,
+                        mGestures.get(gesture.id)));
+            }
+        }
+
+        final int count = results.size();
+        return CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[count]))
+                .handle((ignored, error) -> {
+                    int failed = 0;
+                    for (CompletableFuture<Boolean> result : results) {
+                        if (result.isCompletedExceptionally() || !result.join()) {
+                            failed++;
+                        }
+                    }
+                    Log.i(TAG, "Restored " + (count - failed) + " of " + count
+                            + " tunables in "
+                            + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+                    return failed == 0;
+                });
+    }
+
+    public void writeTo(OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(stream);
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeShort(mFields);
+        if ((mFields & BOOLEAN_FIELDS) != 0) {
+            out.writeByte(mBooleans);
+        }
+        if (has(FIELD_COLOR_BALANCE)) {
+            out.writeInt(mColorBalance);
+        }
+        if (has(FIELD_COLORS)) {
+            out.writeLong(mColors);
+        }
+        if (has(FIELD_HSIC)) {
+            out.writeFloat(mHSIC.getHue());
+            out.writeFloat(mHSIC.getSaturation());
+            out.writeFloat(mHSIC.getIntensity());
+            out.writeFloat(mHSIC.getContrast());
+            out.writeFloat(mHSIC.getSaturationThreshold());
+        }
+        if (has(FIELD_VIBRATOR_INTENSITY)) {
+            out.writeInt(mVibratorIntensity);
+        }
+        if (has(FIELD_GESTURES)) {
+            byte[] gestures = mGestures.toByteArray();
+            out.writeShort(gestures.length);
+            out.write(gestures);
+        }
+        out.flush();
+    }
+
+    /**
+     * @throws IOException if the stream does not hold a snapshot of a
+     * known version
+     */
+    public static HardwareSnapshot readFrom(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a hardware snapshot");
+        }
+        int version = in.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unknown snapshot version " + version);
+        }
+        int fields = in.readUnsignedShort();
+        int booleans = (fields & BOOLEAN_FIELDS) != 0 ? in.readUnsignedByte() : 0;
+        int colorBalance = (fields & FIELD_COLOR_BALANCE) != 0 ? in.readInt() : 0;
+        long colors = (fields & FIELD_COLORS) != 0 ? in.readLong() : 0;
+        HSIC hsic = null;
+        if ((fields & FIELD_HSIC) != 0) {
+            hsic = new HSIC(in.readFloat(), in.readFloat(), in.readFloat(), in.readFloat(),
+                    in.readFloat());
+        }
+        int vibratorIntensity = (fields & FIELD_VIBRATOR_INTENSITY) != 0 ? in.readInt() : 0;
+        BitSet gestures = null;
+        if ((fields & FIELD_GESTURES) != 0) {
+            byte[] bytes = new byte[in.readUnsignedShort()];
+            in.readFully(bytes);
+            gestures = BitSet.valueOf(bytes);
+        }
+        return new HardwareSnapshot(fields, booleans, colorBalance, colors, hsic,
+                vibratorIntensity, gestures);
+    }
+
+    /**
+     * Write the snapshot to a file, atomically replacing any previous one.
+     */
+    public void save(File file) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            BufferedOutputStream buffered = new BufferedOutputStream(out);
+            writeTo(buffered);
+            buffered.flush();
+            out.getFD().sync();
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static HardwareSnapshot load(File file) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            return readFrom(in);
+        }
+    }
+
+    private boolean has(int field) {
+        return (mFields & field) != 0;
+    }
+
+    private boolean get(int field) {
+        return (mBooleans & field) != 0;
+    }
+
+    public static final class Builder {
+        private int mFields;
+        private int mBooleans;
+        private int mColorBalance;
+        private long mColors;
+        private HSIC mHSIC;
+        private int mVibratorIntensity;
+        private BitSet mGestures;
+
+        private Builder setBoolean(int field, boolean value) {
+            mFields |= field;
+            mBooleans = value ? mBooleans | field : mBooleans & ~field;
+            return this;
+        }
+
+        public Builder setAdaptiveBacklight(boolean enabled) {
+            return setBoolean(FIELD_ADAPTIVE_BACKLIGHT, enabled);
+        }
+
+        public Builder setAutoContrast(boolean enabled) {
+            return setBoolean(FIELD_AUTO_CONTRAST, enabled);
+        }
+
+        public Builder setColorEnhancement(boolean enabled) {
+            return setBoolean(FIELD_COLOR_ENHANCEMENT, enabled);
+        }
+
+        public Builder setReadingEnhancement(boolean enabled) {
+            return setBoolean(FIELD_READING_ENHANCEMENT, enabled);
+        }
+
+        public Builder setSunlightEnhancement(boolean enabled) {
+            return setBoolean(FIELD_SUNLIGHT_ENHANCEMENT, enabled);
+        }
+
+        public Builder setColorBalance(int value) {
+            mFields |= FIELD_COLOR_BALANCE;
+            mColorBalance = value;
+            return this;
+        }
+
+        /**
+         * @param colors in the format of DisplayColorCalibration.getCurColors(),
+         *        ignored unless it holds three values
+         */
+        public Builder setDisplayColorCalibration(String colors) {
+            String[] rgb = colors.trim().split("\\s+");
+            if (rgb.length != 3) {
+                return this;
+            }
+            try {
+                mColors = PackedColors.pack(Integer.parseInt(rgb[0]),
+                        Integer.parseInt(rgb[1]), Integer.parseInt(rgb[2]));
+            } catch (NumberFormatException e) {
+                return this;
+            }
+            mFields |= FIELD_COLORS;
+            return this;
+        }
+
+        /**
+         * @param hsic The picture adjustment to restore, ignored if null
+         */
+        public Builder setPictureAdjustment(HSIC hsic) {
+            if (hsic == null) {
+                return this;
+            }
+            mFields |= FIELD_HSIC;
+            mHSIC = hsic;
+            return this;
+        }
+
+        public Builder setVibratorIntensity(int intensity) {
+            mFields |= FIELD_VIBRATOR_INTENSITY;
+            mVibratorIntensity = intensity;
+            return this;
+        }
+
+        /**
+         * @param enabled The ids of the enabled gestures, any available
+         *        gesture not in the set is disabled on restore
+         */
+        public Builder setTouchscreenGestures(BitSet enabled) {
+            mFields |= FIELD_GESTURES;
+            mGestures = (BitSet) enabled.clone();
+            return this;
+        }
+
+        public HardwareSnapshot build() {
+            return new HardwareSnapshot(mFields, mBooleans, mColorBalance, mColors, mHSIC,
+                    mVibratorIntensity, mGestures == null ? null : (BitSet) mGestures.clone());
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2018 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.lineageos.hardware;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+/**
+ * Shared timer thread
+ *
+ * Only for delays and deadlines. Tasks scheduled here must never touch
+ * sysfs or wait for anything, they hand the actual work to the executor
+ * that does it, so a driver that blocks can not hold up unrelated timers.
+ */
+final class HardwareTimer {
+
+    private static final String NAME = "LineageHardwareTimer";
+
+    private HardwareTimer() {
+        // This class is not supposed to be instantiated
+    }
+
+    private static final class Holder {
+        static final ScheduledExecutorService EXECUTOR = create();
+
+        private static ScheduledExecutorService create() {
+            ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, r -> {
+                Thread thread = new Thread(r, NAME);
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.setRemoveOnCancelPolicy(true);
+            return executor;
+        }
+    }
+
+    static ScheduledExecutorService get() {
+        return Holder.EXECUTOR;
+    }
+}
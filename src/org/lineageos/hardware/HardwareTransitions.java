@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2018 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.lineageos.hardware;
+
+/**
+ * Smooth transitions of the color tunables
+ *
+ * Ramps ColorBalance and DisplayColorCalibration from their current value
+ * to a target over a given duration, e.g. for Night Light, instead of
+ * jumping there in one write. Steps are written at most TRANSITION_RATE
+ * times per second, on NodeExecutor under the key of the tunable. Starting
+ * a transition while one is running retargets it from wherever it is.
+ *
+ * Only the getters and setters present in the dummy classes are used, so
+ * this works the same with any device implementation of them, and lives
+ * outside of all of them for that reason.
+ */
+public final class HardwareTransitions {
+
+    private static final int TRANSITION_RATE = 60;
+
+    private static final TransitionEngine COLOR_BALANCE = new TransitionEngine(1,
+            TRANSITION_RATE, ColorBalance.class.getName(),
+            value -> ColorBalance.setValue(value[0]));
+
+    private static final TransitionEngine DISPLAY_COLOR_CALIBRATION = new TransitionEngine(3,
+            TRANSITION_RATE, DisplayColorCalibration.class.getName(),
+            rgb -> DisplayColorCalibration.setColors(rgb[0] + " " + rgb[1] + " " + rgb[2]));
+
+    private HardwareTransitions() {
+        // This class is not supposed to be instantiated
+    }
+
+    /**
+     * @param durationMillis time the transition should take
+     */
+    public static void transitionColorBalance(int value, long durationMillis) {
+        COLOR_BALANCE.start(new int[] { value }, durationMillis, current -> {
+            current[0] = ColorBalance.getValue();
+            return true;
+        });
+    }
+
+    /**
+     * Stop a running color balance transition where it is.
+     */
+    public static void cancelColorBalanceTransition() {
+        COLOR_BALANCE.cancel();
+    }
+
+    /**
+     * @param rgb the target red, green and blue values
+     * @param durationMillis time the transition should take
+     */
+    public static void transitionDisplayColorCalibration(int[] rgb, long durationMillis) {
+        DISPLAY_COLOR_CALIBRATION.start(rgb, durationMillis,
+                HardwareTransitions::readDisplayColorCalibration);
+    }
+
+    /**
+     * Stop a running display color calibration transition where it is.
+     */
+    public static void cancelDisplayColorCalibrationTransition() {
+        DISPLAY_COLOR_CALIBRATION.cancel();
+    }
+
+    private static boolean readDisplayColorCalibration(int[] rgb) {
+        String colors = DisplayColorCalibration.getCurColors();
+        if (colors == null) {
+            return false;
+        }
+        String[] values = colors.trim().split("\\s+");
+        if (values.length != rgb.length) {
+            return false;
+        }
+        try {
+            for (int i = 0; i < rgb.length; i++) {
+                rgb[i] = Integer.parseInt(values[i]);
+            }
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        return true;
+    }
+}
@@ -27,6 +27,17 @@ package org.lineageos.hardware;
 
 public class KeyDisabler {
 
+    private static final int STATE_UNKNOWN = -1;
+    private static final int STATE_INACTIVE = 0;
+    private static final int STATE_ACTIVE = 1;
+
+    /*
+     * Authoritative copy of the hardware state, read once and then kept
+     * up to date by setActive(), which is the only writer.
+     */
+    private static volatile int sState = STATE_UNKNOWN;
+    private static final Object sLock = new Object();
+
     /**
      * All HAF classes should export this boolean.
      * Real implementations must, of course, return true
@@ -37,15 +48,48 @@ public class KeyDisabler {
 
     /**
      * Are the keys currently blocked?
+     *
+     * Answered from memory, this does no I/O once the state is known.
      */
     public static boolean isActive() {
-        return false;
+        int state = sState;
+        if (state == STATE_UNKNOWN) {
+            synchronized (sLock) {
+                state = sState;
+                if (state == STATE_UNKNOWN) {
+                    state = readActive() ? STATE_ACTIVE : STATE_INACTIVE;
+                    sState = state;
+                }
+            }
+        }
+        return state == STATE_ACTIVE;
     }
 
     /**
      * Disable capacitive keys
+     *
+     * Requests that match the current state return right away.
      */
     public static boolean setActive(boolean state) {
+        synchronized (sLock) {
+            if (isActive() == state) {
+                return true;
+            }
+            if (!writeActive(state)) {
+                // Re-read the hardware the next time it is needed
+                sState = STATE_UNKNOWN;
+                return false;
+            }
+            sState = state ? STATE_ACTIVE : STATE_INACTIVE;
+            return true;
+        }
+    }
+
+    private static boolean readActive() {
+        return false;
+    }
+
+    private static boolean writeActive(boolean state) {
         throw new UnsupportedOperationException();
     }
 }
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2018 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lineageos.hardware;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * In-memory NodeBackend
+ *
+ * Lets the tunables run without the real hardware, e.g. on a host or when
+ * replaying a NodeTrace. Every read and write can be given an artificial
+ * latency to model a slow driver.
+ */
+public final class MemoryBackend implements NodeBackend {
+
+    private static final class Node {
+        final boolean mReadable;
+        final boolean mWritable;
+        volatile byte[] mContents;
+
+        Node(byte[] contents, boolean readable, boolean writable) {
+            mContents = contents;
+            mReadable = readable;
+            mWritable = writable;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Node> mNodes = new ConcurrentHashMap<>();
+
+    private volatile long mReadLatencyNanos;
+    private volatile long mWriteLatencyNanos;
+
+    /**
+     * Create a readable and writable node, or replace an existing one.
+     */
+    public void put(String path, String contents) {
+        put(path, contents, true, true);
+    }
+
+    public void put(String path, String contents, boolean readable, boolean writable) {
+        mNodes.put(path, new Node(contents.getBytes(StandardCharsets.US_ASCII),
+                readable, writable));
+    }
+
+    public void remove(String path) {
+        mNodes.remove(path);
+    }
+
+    /**
+     * @return the current contents of a node, or null if it doesn't exist
+     */
+    public String get(String path) {
+        Node node = mNodes.get(path);
+        return node != null ? new String(node.mContents, StandardCharsets.US_ASCII) : null;
+    }
+
+    /**
+     * Make every following read and write take at least the given time.
+     */
+    public void setLatency(long readNanos, long writeNanos) {
+        mReadLatencyNanos = readNanos;
+        mWriteLatencyNanos = writeNanos;
+    }
+
+    @Override
+    public int read(String path, ByteBuffer dst) throws IOException {
+        delay(mReadLatencyNanos);
+        Node node = getNode(path);
+        if (!node.mReadable) {
+            throw new IOException(path + " is not readable");
+        }
+        byte[] contents = node.mContents;
+        dst.put(contents, 0, Math.min(contents.length, dst.remaining()));
+        return dst.position();
+    }
+
+    @Override
+    public void write(String path, ByteBuffer src) throws IOException {
+        delay(mWriteLatencyNanos);
+        Node node = getNode(path);
+        if (!node.mWritable) {
+            throw new IOException(path + " is not writable");
+        }
+        byte[] contents = new byte[src.remaining()];
+        src.get(contents);
+        node.mContents = contents;
+    }
+
+    @Override
+    public boolean exists(String path) {
+        return mNodes.containsKey(path);
+    }
+
+    @Override
+    public boolean isReadable(String path) {
+        Node node = mNodes.get(path);
+        return node != null && node.mReadable;
+    }
+
+    @Override
+    public boolean isWritable(String path) {
+        Node node = mNodes.get(path);
+        return node != null && node.mWritable;
+    }
+
+    @Override
+    public void reset(String path) {
+        // Nothing is cached
+    }
+
+    private Node getNode(String path) throws FileNotFoundException {
+        Node node = mNodes.get(path);
+        if (node == null) {
+            throw new FileNotFoundException(path);
+        }
+        return node;
+    }
+
+    private static void delay(long nanos) {
+        long deadline = System.nanoTime() + nanos;
+        long remaining = nanos;
+        while (remaining > 0) {
+            LockSupport.parkNanos(remaining);
+            remaining = deadline - System.nanoTime();
+        }
+    }
+}
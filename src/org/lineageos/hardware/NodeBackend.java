@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2018 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lineageos.hardware;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Storage behind SysfsNode
+ *
+ * Nodes are addressed by their absolute path and always accessed as a
+ * whole, like sysfs attributes. Calls for the same path are never made
+ * concurrently.
+ */
+public interface NodeBackend {
+
+    /**
+     * Read the contents of a node into dst, starting at position 0.
+     *
+     * @return the number of bytes read
+     */
+    int read(String path, ByteBuffer dst) throws IOException;
+
+    /**
+     * Replace the contents of a node with the remaining bytes of src.
+     */
+    void write(String path, ByteBuffer src) throws IOException;
+
+    boolean exists(String path);
+
+    boolean isReadable(String path);
+
+    boolean isWritable(String path);
+
+    /**
+     * Drop any state kept for a node, called after an operation on it failed.
+     */
+    void reset(String path);
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2018 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lineageos.hardware;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Executor for all deferred sysfs I/O
+ *
+ * Tasks are keyed by the tunable they touch, usually the name of its class.
+ * Tasks for the same key run one at a time in submission order. Tasks for
+ * different keys run in parallel, each key on a pool thread of its own
+ * while it has work, so a slow driver never blocks the binder thread that
+ * asked for the change, and only delays other work on the same tunable.
+ * Setters, coalesced writes, transitions and change notifications of a
+ * tunable all use its key, so they stay in order with each other.
+ *
+ * Threads are only created while keys are busy, and dropped again after
+ * KEEP_ALIVE_SECONDS. Since there is at most one thread per busy key, the
+ * number of threads is bounded by the number of tunables.
+ */
+final class NodeExecutor {
+
+    private static final long KEEP_ALIVE_SECONDS = 10;
+
+    private static final ConcurrentHashMap<String, SerialExecutor> sExecutors =
+            new ConcurrentHashMap<>();
+
+    /* The key whose task the current thread is running, if any */
+    private static final ThreadLocal<String> sCurrentKey = new ThreadLocal<>();
+
+    private NodeExecutor() {
+        // This class is not supposed to be instantiated
+    }
+
+    private static final class Holder {
+        static final ExecutorService POOL = create();
+
+        private static ExecutorService create() {
+            AtomicInteger count = new AtomicInteger();
+            return new ThreadPoolExecutor(0, Integer.MAX_VALUE,
+                    KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new SynchronousQueue<>(), r -> {
+                        Thread thread = new Thread(r,
+                                "LineageHardwareAsync-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+        }
+    }
+
+    private static final class SerialExecutor implements Executor {
+        private final String mKey;
+        private final ArrayDeque<Runnable> mTasks = new ArrayDeque<>();
+        private Runnable mActive;
+
+        SerialExecutor(String key) {
+            mKey = key;
+        }
+
+        @Override
+        public synchronized void execute(Runnable task) {
+            mTasks.add(() -> {
+                sCurrentKey.set(mKey);
+                try {
+                    task.run();
+                } finally {
+                    sCurrentKey.remove();
+                    scheduleNext();
+                }
+            });
+            if (mActive == null) {
+                scheduleNext();
+            }
+        }
+
+        private synchronized void scheduleNext() {
+            mActive = mTasks.poll();
+            if (mActive != null) {
+                Holder.POOL.execute(mActive);
+            }
+        }
+    }
+
+    /**
+     * @return the executor that runs tasks for a key in submission order
+     */
+    static Executor executor(String key) {
+        SerialExecutor executor = sExecutors.get(key);
+        return executor != null ? executor
+                : sExecutors.computeIfAbsent(key, SerialExecutor::new);
+    }
+
+    /**
+     * Run a setter after all setters previously submitted with the same key.
+     */
+    static CompletableFuture<Boolean> submit(String key, Supplier<Boolean> setter) {
+        return CompletableFuture.supplyAsync(setter, executor(key));
+    }
+
+    /**
+     * Run a task for a key after a delay. The delay runs out on
+     * HardwareTimer, the task then queues up behind everything submitted
+     * for the key by that time. Cancelling only works while it is waiting.
+     */
+    static ScheduledFuture<?> schedule(String key, Runnable task, long delay, TimeUnit unit) {
+        Executor executor = executor(key);
+        return HardwareTimer.get().schedule(() -> executor.execute(task), delay, unit);
+    }
+
+    /**
+     * @return whether the calling thread is running a task for the key
+     */
+    static boolean isCurrentKey(String key) {
+        return key.equals(sCurrentKey.get());
+    }
+}
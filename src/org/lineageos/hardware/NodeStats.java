@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2018 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lineageos.hardware;
+
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Call counters and latency histogram for one kind of node operation
+ *
+ * All counters are updated without locking. Latencies are kept in a
+ * log-linear histogram with four buckets per power of two, so that any
+ * percentile is known within 25% of its value at a fixed memory cost.
+ */
+final class NodeStats {
+
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = 64 * SUB_BUCKETS;
+
+    private final AtomicLong mCount = new AtomicLong();
+    private final AtomicLong mFailures = new AtomicLong();
+    private final AtomicLong mTotalNanos = new AtomicLong();
+    private final AtomicLong mMaxNanos = new AtomicLong();
+    private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKETS);
+
+    void record(long nanos, boolean success) {
+        mCount.incrementAndGet();
+        if (!success) {
+            mFailures.incrementAndGet();
+        }
+        mTotalNanos.addAndGet(nanos);
+        mMaxNanos.accumulateAndGet(nanos, Math::max);
+        mBuckets.incrementAndGet(bucketOf(nanos));
+    }
+
+    long getCount() {
+        return mCount.get();
+    }
+
+    void dump(PrintWriter pw, String name) {
+        long count = mCount.get();
+        if (count == 0) {
+            return;
+        }
+        pw.println("    " + name + ": count=" + count
+                + " failed=" + mFailures.get()
+                + " mean=" + formatNanos(mTotalNanos.get() / count)
+                + " p50=" + formatNanos(percentile(count, 0.50))
+                + " p90=" + formatNanos(percentile(count, 0.90))
+                + " p99=" + formatNanos(percentile(count, 0.99))
+                + " max=" + formatNanos(mMaxNanos.get()));
+    }
+
+    /**
+     * @return the upper bound of the bucket holding the given percentile
+     */
+    private long percentile(long count, double fraction) {
+        long rank = (long) Math.ceil(count * fraction);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += mBuckets.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), mMaxNanos.get());
+            }
+        }
+        return mMaxNanos.get();
+    }
+
+    private static int bucketOf(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) Math.max(0, nanos);
+        }
+        int octave = 63 - Long.numberOfLeadingZeros(nanos);
+        int sub = (int) (nanos >>> (octave - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (octave - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    private static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lower + (1L << shift) - 1;
+    }
+
+    private static String formatNanos(long nanos) {
+        if (nanos < 10000) {
+            return nanos + "ns";
+        } else if (nanos < 10000000) {
+            return (nanos / 1000) + "us";
+        }
+        return (nanos / 1000000) + "ms";
+    }
+}
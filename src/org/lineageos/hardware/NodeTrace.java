@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2018 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lineageos.hardware;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Recorded sequence of node operations
+ *
+ * To capture what LiveDisplay or Settings do on a real device, wrap the
+ * current backend with record() and install the result with
+ * SysfsNode.setBackend(). The trace can be saved and loaded as text, one
+ * operation per line, and replayed at full speed through SysfsNode against
+ * whatever backend is installed, e.g. a MemoryBackend, to measure the
+ * throughput of the whole library. Redundant write skipping is turned off
+ * while replaying, so every recorded operation reaches the backend.
+ */
+public final class NodeTrace {
+
+    private static final char READ = 'R';
+    private static final char WRITE = 'W';
+
+    private static final class Operation {
+        final char mType;
+        final String mPath;
+        final String mValue;
+
+        Operation(char type, String path, String value) {
+            mType = type;
+            mPath = path;
+            mValue = value;
+        }
+    }
+
+    private final List<Operation> mOperations = new ArrayList<>();
+
+    public synchronized int size() {
+        return mOperations.size();
+    }
+
+    /**
+     * @return a backend that forwards to delegate and appends every
+     * successful operation to this trace
+     */
+    public NodeBackend record(final NodeBackend delegate) {
+        return new NodeBackend() {
+            @Override
+            public int read(String path, ByteBuffer dst) throws IOException {
+                int length = delegate.read(path, dst);
+                add(new Operation(READ, path, null));
+                return length;
+            }
+
+            @Override
+            public void write(String path, ByteBuffer src) throws IOException {
+                byte[] value = new byte[src.remaining()];
+                src.duplicate().get(value);
+                delegate.write(path, src);
+                add(new Operation(WRITE, path, new String(value, StandardCharsets.US_ASCII)));
+            }
+
+            @Override
+            public boolean exists(String path) {
+                return delegate.exists(path);
+            }
+
+            @Override
+            public boolean isReadable(String path) {
+                return delegate.isReadable(path);
+            }
+
+            @Override
+            public boolean isWritable(String path) {
+                return delegate.isWritable(path);
+            }
+
+            @Override
+            public void reset(String path) {
+                delegate.reset(path);
+            }
+        };
+    }
+
+    /**
+     * Run all operations through SysfsNode, back to back. Nothing else
+     * should change the redundant write setting meanwhile.
+     *
+     * @return the time it took in nanoseconds
+     */
+    public long replay() {
+        List<Operation> operations;
+        synchronized (this) {
+            operations = new ArrayList<>(mOperations);
+        }
+        // Tunables hold on to their nodes, so don't time the pool lookups
+        SysfsNode[] nodes = new SysfsNode[operations.size()];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = SysfsNode.get(operations.get(i).mPath);
+        }
+        boolean skip = SysfsNode.getSkipRedundantWrites();
+        SysfsNode.setSkipRedundantWrites(false);
+        try {
+            long start = System.nanoTime();
+            for (int i = 0; i < nodes.length; i++) {
+                Operation operation = operations.get(i);
+                if (operation.mType == READ) {
+                    nodes[i].readLine();
+                } else {
+                    nodes[i].writeLine(operation.mValue);
+                }
+            }
+            return System.nanoTime() - start;
+        } finally {
+            SysfsNode.setSkipRedundantWrites(skip);
+        }
+    }
+
+    public synchronized void writeTo(PrintWriter writer) {
+        for (Operation operation : mOperations) {
+            writer.print(operation.mType);
+            writer.print(' ');
+            writer.print(operation.mPath);
+            if (operation.mType == WRITE) {
+                writer.print(' ');
+                writer.print(operation.mValue);
+            }
+            writer.println();
+        }
+        writer.flush();
+    }
+
+    public static NodeTrace readFrom(Reader reader) throws IOException {
+        NodeTrace trace = new NodeTrace();
+        BufferedReader lines = new BufferedReader(reader);
+        String line;
+        while ((line = lines.readLine()) != null) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] fields = line.split(" ", 3);
+            char type = fields[0].length() == 1 ? fields[0].charAt(0) : 0;
+            if (fields.length < 2 || (type != READ && type != WRITE)
+                    || (type == WRITE && fields.length < 3)) {
+                throw new IOException("Malformed trace line: " + line);
+            }
+            trace.add(new Operation(type, fields[1], type == WRITE ? fields[2] : null));
+        }
+        return trace;
+    }
+
+    private synchronized void add(Operation operation) {
+        mOperations.add(operation);
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2018 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lineageos.hardware;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Shared watcher for nodes with change listeners
+ *
+ * A single thread, started with the first listener, blocks on inotify for
+ * the directories of all watched nodes. Drivers that call sysfs_notify()
+ * on an attribute raise the same modify event as a write from another
+ * process, so both are picked up without any periodic wakeup. Writes
+ * made through SysfsNode in this process are reported directly.
+ */
+final class NodeWatcher {
+
+    private static final String TAG = "NodeWatcher";
+
+    private static final String NAME = "LineageHardwareWatcher";
+
+    private static final ConcurrentHashMap<String, ChangeNotifier<?>> sNotifiers =
+            new ConcurrentHashMap<>();
+
+    /* Guarded by the class lock */
+    private static final Set<Path> sDirectories = new HashSet<>();
+    private static WatchService sService;
+    private static boolean sStarted;
+
+    private NodeWatcher() {
+        // This class is not supposed to be instantiated
+    }
+
+    static synchronized void watch(ChangeNotifier<?> notifier) {
+        String path = notifier.getNode().getPath();
+        sNotifiers.put(path, notifier);
+        if (!sStarted) {
+            sStarted = true;
+            start();
+        }
+        Path directory = Paths.get(path).getParent();
+        if (sService == null || directory == null || sDirectories.contains(directory)) {
+            return;
+        }
+        try {
+            directory.register(sService, StandardWatchEventKinds.ENTRY_MODIFY);
+            sDirectories.add(directory);
+        } catch (IOException e) {
+            Log.w(TAG, "Could not watch " + directory + ", only local writes are reported");
+        }
+    }
+
+    static synchronized void unwatch(ChangeNotifier<?> notifier) {
+        sNotifiers.remove(notifier.getNode().getPath(), notifier);
+    }
+
+    /**
+     * Called by SysfsNode after every successful write.
+     */
+    static void onWritten(String path) {
+        if (sNotifiers.isEmpty()) {
+            return;
+        }
+        ChangeNotifier<?> notifier = sNotifiers.get(path);
+        if (notifier != null) {
+            notifier.onChanged();
+        }
+    }
+
+    private static void start() {
+        try {
+            sService = FileSystems.getDefault().newWatchService();
+        } catch (IOException | UnsupportedOperationException e) {
+            Log.w(TAG, "No watch service, only local writes are reported", e);
+            return;
+        }
+        final WatchService service = sService;
+        Thread thread = new Thread(() -> run(service), NAME);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static void run(WatchService service) {
+        while (true) {
+            WatchKey key;
+            try {
+                key = service.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            Path directory = (Path) key.watchable();
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    // Events were lost, anything may have changed
+                    for (ChangeNotifier<?> notifier : sNotifiers.values()) {
+                        changed(notifier);
+                    }
+                    continue;
+                }
+                String path = directory.resolve((Path) event.context()).toString();
+                ChangeNotifier<?> notifier = sNotifiers.get(path);
+                if (notifier != null) {
+                    changed(notifier);
+                }
+            }
+            key.reset();
+        }
+    }
+
+    private static void changed(ChangeNotifier<?> notifier) {
+        // The shadow value no longer describes the kernel state
+        notifier.getNode().invalidate();
+        notifier.onChanged();
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2018 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lineageos.hardware;
+
+/**
+ * RGB triplets packed into a long
+ *
+ * Red is held in bits 32-47, green in bits 16-31 and blue in bits 0-15.
+ * Kept out of DisplayColorCalibration, which devices replace, so that
+ * every user of the format can rely on it.
+ */
+final class PackedColors {
+
+    private static final int CHANNEL_BITS = 16;
+    private static final long CHANNEL_MASK = 0xffff;
+
+    private PackedColors() {
+        // This class is not supposed to be instantiated
+    }
+
+    static long pack(int red, int green, int blue) {
+        return ((red & CHANNEL_MASK) << (2 * CHANNEL_BITS))
+                | ((green & CHANNEL_MASK) << CHANNEL_BITS)
+                | (blue & CHANNEL_MASK);
+    }
+
+    static int red(long colors) {
+        return (int) ((colors >> (2 * CHANNEL_BITS)) & CHANNEL_MASK);
+    }
+
+    static int green(long colors) {
+        return (int) ((colors >> CHANNEL_BITS) & CHANNEL_MASK);
+    }
+
+    static int blue(long colors) {
+        return (int) (colors & CHANNEL_MASK);
+    }
+}
@@ -19,6 +19,7 @@ package org.lineageos.hardware;
 
 import android.util.Range;
 
+import lineageos.hardware.DisplayMode;
 import lineageos.hardware.HSIC;
 
 /**
@@ -29,6 +30,12 @@ import lineageos.hardware.HSIC;
  */
 public class PictureAdjustment {
 
+    private static final Range<Float> UNSUPPORTED_RANGE = new Range<>(0.0f, 0.0f);
+
+    static {
+        DefaultHSICCache.setLoader(PictureAdjustment::readDefaultHSIC);
+    }
+
     /**
      * Whether device supports picture adjustment
      *
@@ -57,7 +64,7 @@ public class PictureAdjustment {
      * @return the HSIC object or null if not supported
      */
     public static HSIC getDefaultHSIC() {
-        return null;
+        return DefaultHSICCache.get(DisplayModeControl.getCurrentMode());
     }
 
     /**
@@ -76,7 +83,7 @@ public class PictureAdjustment {
      * @return range of floats
      */
     public static Range<Float> getHueRange() {
-        return new Range(0.0f, 0.0f);
+        return UNSUPPORTED_RANGE;
     }
 
     /**
@@ -84,7 +91,7 @@ public class PictureAdjustment {
      * @return range of floats
      */
     public static Range<Float> getSaturationRange() {
-        return new Range(0.0f, 0.0f);
+        return UNSUPPORTED_RANGE;
     }
 
     /**
@@ -92,7 +99,7 @@ public class PictureAdjustment {
      * @return range of floats
      */
     public static Range<Float> getIntensityRange() {
-        return new Range(0.0f, 0.0f);
+        return UNSUPPORTED_RANGE;
     }
 
     /**
@@ -100,7 +107,7 @@ public class PictureAdjustment {
      * @return range of floats
      */
     public static Range<Float> getContrastRange() {
-        return new Range(0.0f, 0.0f);
+        return UNSUPPORTED_RANGE;
     }
 
     /**
@@ -111,6 +118,10 @@ public class PictureAdjustment {
      * @return range of floats
      */
     public static Range<Float> getSaturationThresholdRange() {
-        return new Range(0.0f, 0.0f);
+        return UNSUPPORTED_RANGE;
+    }
+
+    private static HSIC readDefaultHSIC(DisplayMode mode) {
+        return null;
     }
 }
@@ -16,7 +16,7 @@
 
 package org.lineageos.hardware;
 
-import org.lineageos.internal.util.FileUtils;
+import lineageos.hardware.LineageHardwareManager;
 
 /**
  * Reader mode
@@ -27,13 +27,21 @@ public class ReadingEnhancement {
 
     private static final String FILE_READING = "/sys/class/graphics/fb0/reading_mode";
 
+    private static final SysfsNode READING = SysfsNode.get(FILE_READING);
+
+    static {
+        HardwareListeners.watch(LineageHardwareManager.FEATURE_READING_ENHANCEMENT, READING);
+    }
+
     /**
      * Whether device supports Reader Mode
      *
      * @return boolean Supported devices must return always true
      */
     public static boolean isSupported() {
-        return FileUtils.isFileReadable(FILE_READING) && FileUtils.isFileWritable(FILE_READING);
+        return HardwareCapabilities.isSupported(
+                LineageHardwareManager.FEATURE_READING_ENHANCEMENT,
+                () -> READING.isReadable() && READING.isWritable());
     }
 
     /**
@@ -43,7 +51,7 @@ public class ReadingEnhancement {
      * or the operation failed while reading the status; true in any other case.
      */
     public static boolean isEnabled() {
-        return Integer.parseInt(FileUtils.readOneLine(FILE_READING)) > 0;
+        return READING.readBoolean();
     }
 
     /**
@@ -54,7 +62,7 @@ public class ReadingEnhancement {
      * failed; true in any other case.
      */
     public static boolean setEnabled(boolean status) {
-        return FileUtils.writeLine(FILE_READING, status ? "1" : "0");
+        return READING.writeInt(status ? 1 : 0);
     }
 
 }
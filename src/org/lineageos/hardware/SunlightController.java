@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2018 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lineageos.hardware;
+
+import java.util.function.Predicate;
+
+/**
+ * Ambient light driven control of sunlight enhancement
+ *
+ * Meant for implementations where SunlightEnhancement.isSelfManaged() is
+ * false. Lux samples are smoothed with a moving average, the feature is
+ * turned on once the average reaches enterLux and off again once it drops
+ * below exitLux, and it stays in either state for at least minDwellMillis.
+ * SunlightEnhancement.setEnabled() is only called on actual transitions.
+ */
+public final class SunlightController {
+
+    private final float mEnterLux;
+    private final float mExitLux;
+    private final long mMinDwellMillis;
+    private final Predicate<Boolean> mSink;
+
+    private final float[] mSamples;
+    private int mSampleCount;
+    private int mNextSample;
+    private double mSampleSum;
+
+    private boolean mEnabled;
+    private boolean mTransitioned;
+    private long mLastTransitionMillis;
+    private int mWriteCount;
+
+    /**
+     * @param enterLux average lux at or above which the feature is enabled
+     * @param exitLux average lux below which the feature is disabled again,
+     * must not be above enterLux
+     * @param minDwellMillis minimum time between two transitions
+     * @param window number of samples in the moving average
+     */
+    public SunlightController(float enterLux, float exitLux, long minDwellMillis, int window) {
+        this(enterLux, exitLux, minDwellMillis, window, SunlightEnhancement::setEnabled);
+    }
+
+    SunlightController(float enterLux, float exitLux, long minDwellMillis, int window,
+            Predicate<Boolean> sink) {
+        if (exitLux > enterLux) {
+            throw new IllegalArgumentException("exitLux must not be above enterLux");
+        }
+        if (window < 1) {
+            throw new IllegalArgumentException("window must hold at least one sample");
+        }
+        mEnterLux = enterLux;
+        mExitLux = exitLux;
+        mMinDwellMillis = minDwellMillis;
+        mSink = sink;
+        mSamples = new float[window];
+    }
+
+    /**
+     * Feed a new ambient light sample.
+     *
+     * @param lux the measured illuminance
+     * @param timestampMillis a monotonic timestamp of the measurement
+     */
+    public synchronized void onLuxChanged(float lux, long timestampMillis) {
+        if (mSampleCount == mSamples.length) {
+            mSampleSum -= mSamples[mNextSample];
+        } else {
+            mSampleCount++;
+        }
+        mSamples[mNextSample] = lux;
+        mSampleSum += lux;
+        mNextSample = (mNextSample + 1) % mSamples.length;
+
+        double average = mSampleSum / mSampleCount;
+        boolean enable = mEnabled ? average >= mExitLux : average >= mEnterLux;
+        if (enable == mEnabled || (mTransitioned
+                && timestampMillis - mLastTransitionMillis < mMinDwellMillis)) {
+            return;
+        }
+        mWriteCount++;
+        if (mSink.test(enable)) {
+            mEnabled = enable;
+            mTransitioned = true;
+            mLastTransitionMillis = timestampMillis;
+        }
+    }
+
+    /**
+     * Forget all samples and assume the feature is off, e.g. after the
+     * screen was turned off.
+     */
+    public synchronized void reset() {
+        mSampleCount = 0;
+        mNextSample = 0;
+        mSampleSum = 0;
+        mEnabled = false;
+        mTransitioned = false;
+    }
+
+    public synchronized boolean isEnabled() {
+        return mEnabled;
+    }
+
+    /**
+     * @return the number of times the node was written so far
+     */
+    public synchronized int getWriteCount() {
+        return mWriteCount;
+    }
+}
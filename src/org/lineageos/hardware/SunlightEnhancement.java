@@ -19,7 +19,7 @@ package org.lineageos.hardware;
 
 import android.util.Log;
 
-import org.lineageos.internal.util.FileUtils;
+import lineageos.hardware.LineageHardwareManager;
 
 /**
  * Facemelt mode!
@@ -28,26 +28,20 @@ public class SunlightEnhancement {
 
     private static final String TAG = "SunlightEnhancement";
 
-    private static final String FACEMELT_PATH = getFacemeltPath();
-    private static final String FACEMELT_MODE = getFacemeltMode();
-
     private static final String FILE_HBM = "/sys/class/graphics/fb0/hbm";
     private static final String FILE_SRE = "/sys/class/graphics/fb0/sre";
 
-    private static String getFacemeltPath() {
-        if (FileUtils.fileExists(FILE_HBM)) {
-            return FILE_HBM;
-        } else {
-            return FILE_SRE;
-        }
-    }
+    /*
+     * Resolved on first use rather than when the class is loaded, which
+     * happens on the boot path even if the feature is never used. Class
+     * initialization makes this thread-safe.
+     */
+    private static final class Facemelt {
+        private static final boolean HBM = SysfsNode.get(FILE_HBM).exists();
 
-    private static String getFacemeltMode() {
-        if (FileUtils.fileExists(FILE_HBM)) {
-            return "1";
-        } else {
-            return "2";
-        }
+        static final String PATH = HBM ? FILE_HBM : FILE_SRE;
+        static final int MODE = HBM ? 1 : 2;
+        static final SysfsNode NODE = SysfsNode.get(PATH);
     }
 
     /**
@@ -56,7 +50,8 @@ public class SunlightEnhancement {
      * @return boolean Supported devices must return always true
      */
     public static boolean isSupported() {
-        return FileUtils.isFileReadable(FACEMELT_PATH) && FileUtils.isFileWritable(FACEMELT_PATH);
+        return HardwareCapabilities.isSupported(LineageHardwareManager.FEATURE_SUNLIGHT_ENHANCEMENT,
+                () -> Facemelt.NODE.isReadable() && Facemelt.NODE.isWritable());
     }
 
     /**
@@ -66,7 +61,7 @@ public class SunlightEnhancement {
      * or the operation failed while reading the status; true in any other case.
      */
     public static boolean isEnabled() {
-        return Integer.parseInt(FileUtils.readOneLine(FACEMELT_PATH)) > 0;
+        return Facemelt.NODE.readBoolean();
     }
 
     /**
@@ -77,7 +72,7 @@ public class SunlightEnhancement {
      * failed; true in any other case.
      */
     public static boolean setEnabled(boolean status) {
-        return FileUtils.writeLine(FACEMELT_PATH, status ? FACEMELT_MODE : "0");
+        return Facemelt.NODE.writeInt(status ? Facemelt.MODE : 0);
     }
 
     /**
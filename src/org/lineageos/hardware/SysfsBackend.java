@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2018 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lineageos.hardware;
+
+import org.lineageos.internal.util.FileUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * NodeBackend for the real file system
+ *
+ * Keeps one FileChannel per node open, and uses positional I/O at offset 0
+ * so that sysfs regenerates the attribute on every read.
+ */
+final class SysfsBackend implements NodeBackend {
+
+    private final ConcurrentHashMap<String, FileChannel> mChannels = new ConcurrentHashMap<>();
+
+    @Override
+    public int read(String path, ByteBuffer dst) throws IOException {
+        FileChannel channel = open(path);
+        // sysfs may hand the attribute out in several chunks
+        while (dst.hasRemaining() && channel.read(dst, dst.position()) > 0) {
+        }
+        return dst.position();
+    }
+
+    @Override
+    public void write(String path, ByteBuffer src) throws IOException {
+        FileChannel channel = open(path);
+        int offset = src.position();
+        try {
+            while (src.hasRemaining()) {
+                channel.write(src, src.position() - offset);
+            }
+        } catch (NonWritableChannelException e) {
+            throw new IOException(path + " is read-only", e);
+        }
+    }
+
+    @Override
+    public boolean exists(String path) {
+        return FileUtils.fileExists(path);
+    }
+
+    @Override
+    public boolean isReadable(String path) {
+        return FileUtils.isFileReadable(path);
+    }
+
+    @Override
+    public boolean isWritable(String path) {
+        return FileUtils.isFileWritable(path);
+    }
+
+    @Override
+    public void reset(String path) {
+        FileChannel channel = mChannels.remove(path);
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Nothing to do, the handle is dropped either way
+            }
+        }
+    }
+
+    private FileChannel open(String path) throws IOException {
+        FileChannel channel = mChannels.get(path);
+        if (channel != null) {
+            return channel;
+        }
+        try {
+            // Atomic, so that racing first opens of a node do not leak a channel
+            return mChannels.computeIfAbsent(path, SysfsBackend::openChannel);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static FileChannel openChannel(String path) {
+        try {
+            try {
+                return FileChannel.open(Paths.get(path),
+                        StandardOpenOption.READ, StandardOpenOption.WRITE);
+            } catch (AccessDeniedException e) {
+                // Read-only attribute
+                return FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
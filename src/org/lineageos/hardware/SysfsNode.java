@@ -0,0 +1,596 @@
+/*
+ * Copyright (C) 2018 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lineageos.hardware;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pooled handle to a single sysfs node
+ *
+ * All I/O goes through a NodeBackend, by default one that keeps every node
+ * open and uses positional reads and writes at offset 0, which makes the
+ * kernel regenerate the attribute without the open/close cycle of FileUtils.
+ * If an operation fails the backend is told to drop its state for the node,
+ * e.g. a stale handle, and the operation is retried once before giving up.
+ * A node whose operations keep failing, e.g. because its driver is broken,
+ * is left alone for a while: operations fail right away without touching
+ * the backend, and the pause doubles every time the node fails again after
+ * it. Failures are only logged when such a pause starts. Reads and writes
+ * are tracked separately, so a node whose contents can't be parsed still
+ * takes writes, and one that rejects writes can still be read.
+ * The backend can be replaced, e.g. with a MemoryBackend to run off-device.
+ *
+ * Every operation that reaches the backend is counted and timed per node,
+ * see dump().
+ *
+ * Reads go through a direct buffer owned by the calling thread, so that
+ * integer, boolean and integer tuple values (e.g. "r g b") can be parsed
+ * and formatted without any allocation.
+ *
+ * Every node also shadows the last value that was successfully read from or
+ * written to it. Writes of that same value can be skipped, but only once
+ * enabled with setSkipRedundantWrites(): the kernel may reset nodes behind
+ * our back, e.g. across suspend, and a skipped re-apply would then leave
+ * the feature silently off. Whoever enables it has to drop the shadow
+ * state with invalidateAll() whenever that may have happened, e.g. on
+ * screen on.
+ *
+ * Nodes are safe to use from any thread. Every operation holds the monitor
+ * of its node, so operations on one node never interleave while those on
+ * different nodes run in parallel. A read-modify-write sequence that must
+ * not be interleaved with other threads can hold the same monitor, i.e.
+ * synchronize on the node, since it is reentrant.
+ *
+ * Since that monitor is held across the backend call, which can block for
+ * as long as the driver likes, nothing that only drops state takes it:
+ * invalidate(), invalidateAll() and setBackend() bump a generation counter
+ * of the node or of all nodes, and the shadow value only counts while the
+ * generations it was recorded with are still current. Failure tracking is
+ * reset by the next operation that sees a different backend.
+ */
+public final class SysfsNode {
+
+    private static final String TAG = "SysfsNode";
+
+    /* sysfs attributes never exceed a page */
+    private static final int MAX_SIZE = 4096;
+
+    /* Longest integer tuple a node is expected to hold */
+    private static final int MAX_INTS = 8;
+
+    /* Consecutive failed operations after which a node is left alone */
+    private static final int FAILURE_THRESHOLD = 3;
+    private static final long MIN_BACKOFF_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long MAX_BACKOFF_NANOS = TimeUnit.MINUTES.toNanos(5);
+
+    private static final ThreadLocal<ByteBuffer> sBuffer =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(MAX_SIZE));
+
+    private static final ConcurrentHashMap<String, SysfsNode> sNodes =
+            new ConcurrentHashMap<>();
+
+    private static volatile NodeBackend sBackend = new SysfsBackend();
+
+    private static volatile boolean sSkipRedundantWrites;
+
+    /* Bumped to drop the shadow state of all nodes at once */
+    private static final AtomicInteger sEpoch = new AtomicInteger();
+
+    private final String mPath;
+
+    private final NodeStats mReadStats = new NodeStats();
+    private final NodeStats mWriteStats = new NodeStats();
+
+    /* Bumped to drop the shadow state of this node */
+    private final AtomicInteger mGeneration = new AtomicInteger();
+
+    private final int[] mShadowInts = new int[MAX_INTS];
+    private int mShadowCount = -1;
+    private String mShadowLine;
+    /* The generations the shadow state was recorded with, see stamp() */
+    private long mShadowStamp;
+
+    /* The backend the failure tracking is about */
+    private NodeBackend mBreakerBackend;
+
+    private final Breaker mReadBreaker = new Breaker("reads");
+    private final Breaker mWriteBreaker = new Breaker("writes");
+
+    private SysfsNode(String path) {
+        mPath = path;
+    }
+
+    /**
+     * Get the shared handle for a node. This does not touch the file system,
+     * the node is opened on first access.
+     */
+    static SysfsNode get(String path) {
+        return sNodes.computeIfAbsent(path, SysfsNode::new);
+    }
+
+    String getPath() {
+        return mPath;
+    }
+
+    public static NodeBackend getBackend() {
+        return sBackend;
+    }
+
+    /**
+     * Route all node I/O through another backend. The shadow state of all
+     * nodes is dropped, since it describes the previous backend, but the
+     * capability snapshot is not: use HardwareCapabilities.reprobe() for that.
+     */
+    public static void setBackend(NodeBackend backend) {
+        sBackend = backend;
+        sEpoch.incrementAndGet();
+    }
+
+    /**
+     * Skip writes of the value a node is known to hold. Off by default, see
+     * the class documentation for what the caller has to take care of.
+     */
+    public static void setSkipRedundantWrites(boolean skip) {
+        sSkipRedundantWrites = skip;
+    }
+
+    public static boolean getSkipRedundantWrites() {
+        return sSkipRedundantWrites;
+    }
+
+    boolean exists() {
+        return sBackend.exists(mPath);
+    }
+
+    boolean isReadable() {
+        return sBackend.isReadable(mPath);
+    }
+
+    boolean isWritable() {
+        return sBackend.isWritable(mPath);
+    }
+
+    /**
+     * Print call counts, failure counts and latency percentiles of every
+     * node that has been accessed, e.g. for dumpsys.
+     */
+    public static void dump(PrintWriter pw) {
+        pw.println("SysfsNode stats:");
+        for (SysfsNode node : new TreeMap<>(sNodes).values()) {
+            if (node.mReadStats.getCount() == 0 && node.mWriteStats.getCount() == 0) {
+                continue;
+            }
+            pw.println("  " + node.mPath);
+            node.mReadStats.dump(pw, "read");
+            node.mWriteStats.dump(pw, "write");
+            node.dumpFailures(pw);
+        }
+    }
+
+    /**
+     * Forget the last known value of every node, so that the next write
+     * goes to the kernel no matter what.
+     */
+    public static void invalidateAll() {
+        sEpoch.incrementAndGet();
+    }
+
+    /**
+     * Forget the last known value of this node. Never blocks, even while
+     * an operation on the node is stuck in the driver.
+     */
+    void invalidate() {
+        mGeneration.incrementAndGet();
+    }
+
+    /**
+     * @return the current generations of all nodes and of this node. The
+     * shadow state is only valid while this hasn't changed since it was
+     * recorded.
+     */
+    private long stamp() {
+        return ((long) sEpoch.get() << 32) | (mGeneration.get() & 0xffffffffL);
+    }
+
+    private boolean isShadowValid() {
+        return mShadowStamp == stamp();
+    }
+
+    private void clearShadow() {
+        mShadowCount = -1;
+        mShadowLine = null;
+    }
+
+    /**
+     * Read the first line of the node
+     *
+     * @return the line without its terminator, or null if the read failed
+     */
+    synchronized String readLine() {
+        ByteBuffer buffer = sBuffer.get();
+        long stamp = stamp();
+        int length = read(buffer);
+        if (length < 0) {
+            clearShadow();
+            return null;
+        }
+        mReadBreaker.onResult(true, System.nanoTime());
+        int end = 0;
+        while (end < length && buffer.get(end) != '\n') {
+            end++;
+        }
+        byte[] line = new byte[end];
+        buffer.flip();
+        buffer.get(line);
+        mShadowCount = -1;
+        mShadowLine = new String(line, StandardCharsets.US_ASCII);
+        mShadowStamp = stamp;
+        return mShadowLine;
+    }
+
+    /**
+     * Read the node as a decimal integer. Does not allocate unless it fails.
+     * A node that does not hold a single integer counts as a failed read,
+     * like one that can't be read.
+     *
+     * @return the value, or fallback if the read failed or the node does not
+     * hold a single integer
+     */
+    synchronized int readInt(int fallback) {
+        return readShadowInts(true) == 1 ? mShadowInts[0] : fallback;
+    }
+
+    /**
+     * Read the node as a boolean, any positive value meaning true.
+     *
+     * @return false if the read failed or the node does not hold a single
+     * integer
+     */
+    boolean readBoolean() {
+        return readInt(0) > 0;
+    }
+
+    /**
+     * Read whitespace separated decimal integers into a caller supplied
+     * array. Does not allocate.
+     *
+     * @return the number of integers read, or -1 if the read failed, the node
+     * does not hold integers or they don't fit into the array
+     */
+    synchronized int readInts(int[] values) {
+        int count = readShadowInts(false);
+        if (count > values.length) {
+            return -1;
+        }
+        if (count > 0) {
+            System.arraycopy(mShadowInts, 0, values, 0, count);
+        }
+        return count;
+    }
+
+    /**
+     * Write a value to the node
+     *
+     * @return true if the whole value was written
+     */
+    synchronized boolean writeLine(String value) {
+        if (sSkipRedundantWrites && value.equals(mShadowLine) && isShadowValid()) {
+            return true;
+        }
+        clearShadow();
+        long stamp = stamp();
+        if (!write(ByteBuffer.wrap(value.getBytes(StandardCharsets.US_ASCII)))) {
+            return false;
+        }
+        mShadowLine = value;
+        mShadowStamp = stamp;
+        return true;
+    }
+
+    /**
+     * Write a decimal integer to the node. Does not allocate unless it fails.
+     *
+     * @return true if the whole value was written
+     */
+    synchronized boolean writeInt(int value) {
+        if (sSkipRedundantWrites && mShadowCount == 1 && mShadowInts[0] == value
+                && isShadowValid()) {
+            return true;
+        }
+        mShadowInts[0] = value;
+        return writeShadowInts(1);
+    }
+
+    /**
+     * Write the first count values, separated by spaces. Does not allocate
+     * unless it fails.
+     *
+     * @return true if the whole value was written
+     */
+    synchronized boolean writeInts(int[] values, int count) {
+        if (count > MAX_INTS) {
+            throw new IllegalArgumentException("Too many values for " + mPath);
+        }
+        if (sSkipRedundantWrites && mShadowCount == count
+                && equals(mShadowInts, values, count) && isShadowValid()) {
+            return true;
+        }
+        System.arraycopy(values, 0, mShadowInts, 0, count);
+        return writeShadowInts(count);
+    }
+
+    /**
+     * @param single whether anything but a single integer is malformed
+     */
+    private int readShadowInts(boolean single) {
+        ByteBuffer buffer = sBuffer.get();
+        long stamp = stamp();
+        int length = read(buffer);
+        int count = -1;
+        if (length >= 0) {
+            count = parseInts(buffer, length, mShadowInts);
+            boolean valid = single ? count == 1 : count >= 0;
+            if (!valid) {
+                mReadBreaker.mLastError = new IOException("Malformed contents in " + mPath);
+            }
+            mReadBreaker.onResult(valid, System.nanoTime());
+        }
+        mShadowCount = count;
+        mShadowLine = null;
+        mShadowStamp = stamp;
+        return count;
+    }
+
+    private boolean writeShadowInts(int count) {
+        clearShadow();
+        long stamp = stamp();
+        ByteBuffer buffer = sBuffer.get();
+        buffer.clear();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                buffer.put((byte) ' ');
+            }
+            formatInt(buffer, mShadowInts[i]);
+        }
+        buffer.flip();
+        if (!write(buffer)) {
+            return false;
+        }
+        mShadowCount = count;
+        mShadowStamp = stamp;
+        return true;
+    }
+
+    private static boolean equals(int[] a, int[] b, int count) {
+        for (int i = 0; i < count; i++) {
+            if (a[i] != b[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of integers parsed, or -1 if the buffer holds
+     * anything else or more than values.length integers
+     */
+    private static int parseInts(ByteBuffer buffer, int length, int[] values) {
+        int count = 0;
+        int i = skipSpace(buffer, 0, length);
+        while (i < length) {
+            if (count == values.length) {
+                return -1;
+            }
+            boolean negative = buffer.get(i) == '-';
+            if (negative) {
+                i++;
+            }
+            int start = i;
+            long value = 0;
+            while (i < length && i - start < 10) {
+                byte digit = buffer.get(i);
+                if (digit < '0' || digit > '9') {
+                    break;
+                }
+                value = value * 10 + (digit - '0');
+                i++;
+            }
+            if (negative) {
+                value = -value;
+            }
+            int end = skipSpace(buffer, i, length);
+            if (i == start || (end == i && i < length)
+                    || value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+                return -1;
+            }
+            values[count++] = (int) value;
+            i = end;
+        }
+        return count;
+    }
+
+    private static void formatInt(ByteBuffer buffer, int value) {
+        long remaining = value;
+        if (remaining < 0) {
+            buffer.put((byte) '-');
+            remaining = -remaining;
+        }
+        long divisor = 1;
+        while (divisor * 10 <= remaining) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            buffer.put((byte) ('0' + remaining / divisor));
+            remaining %= divisor;
+        }
+    }
+
+    private static int skipSpace(ByteBuffer buffer, int index, int length) {
+        while (index < length && Character.isWhitespace(buffer.get(index))) {
+            index++;
+        }
+        return index;
+    }
+
+    private int read(ByteBuffer buffer) {
+        NodeBackend backend = checkBackend();
+        long start = System.nanoTime();
+        if (mReadBreaker.isBackingOff(start)) {
+            return -1;
+        }
+        int length = readFromBackend(backend, buffer);
+        long end = System.nanoTime();
+        mReadStats.record(end - start, length >= 0);
+        // Successful reads are reported by the caller, once it has seen
+        // whether the contents are usable
+        if (length < 0) {
+            mReadBreaker.onResult(false, end);
+        }
+        return length;
+    }
+
+    private boolean write(ByteBuffer buffer) {
+        NodeBackend backend = checkBackend();
+        long start = System.nanoTime();
+        if (mWriteBreaker.isBackingOff(start)) {
+            return false;
+        }
+        boolean result = writeToBackend(backend, buffer);
+        long end = System.nanoTime();
+        mWriteStats.record(end - start, result);
+        mWriteBreaker.onResult(result, end);
+        if (result) {
+            NodeWatcher.onWritten(mPath);
+        }
+        return result;
+    }
+
+    /**
+     * @return the backend for the current operation, after dropping any
+     * failures that were tracked for another one
+     */
+    private NodeBackend checkBackend() {
+        NodeBackend backend = sBackend;
+        if (backend != mBreakerBackend) {
+            mBreakerBackend = backend;
+            mReadBreaker.reset();
+            mWriteBreaker.reset();
+        }
+        return backend;
+    }
+
+    private synchronized void dumpFailures(PrintWriter pw) {
+        mReadBreaker.dump(pw);
+        mWriteBreaker.dump(pw);
+    }
+
+    /**
+     * Failure tracking for one direction of a node, guarded by the node.
+     * The direction is being left alone while mBackoffNanos > 0.
+     */
+    private final class Breaker {
+        private final String mName;
+        private int mFailures;
+        private long mBackoffNanos;
+        private long mRetryNanos;
+        private long mRejected;
+        IOException mLastError;
+
+        Breaker(String name) {
+            mName = name;
+        }
+
+        boolean isBackingOff(long now) {
+            if (mBackoffNanos > 0 && now - mRetryNanos < 0) {
+                mRejected++;
+                return true;
+            }
+            // Otherwise let the operation through, if the node is still broken
+            // it fails and the next pause starts right away
+            return false;
+        }
+
+        void onResult(boolean success, long now) {
+            if (success) {
+                if (mBackoffNanos > 0) {
+                    Log.i(TAG, mName + " of " + mPath + " work again");
+                }
+                reset();
+                return;
+            }
+            if (++mFailures < FAILURE_THRESHOLD) {
+                return;
+            }
+            mBackoffNanos = mBackoffNanos == 0
+                    ? MIN_BACKOFF_NANOS : Math.min(mBackoffNanos * 2, MAX_BACKOFF_NANOS);
+            mRetryNanos = now + mBackoffNanos;
+            Log.e(TAG, "Leaving " + mName + " of " + mPath + " alone for "
+                    + TimeUnit.NANOSECONDS.toMillis(mBackoffNanos) + "ms after "
+                    + mFailures + " failures", mLastError);
+        }
+
+        void reset() {
+            mFailures = 0;
+            mBackoffNanos = 0;
+            mLastError = null;
+        }
+
+        void dump(PrintWriter pw) {
+            if (mFailures > 0 || mRejected > 0) {
+                pw.println("    failing " + mName + ": consecutive=" + mFailures
+                        + " backoff=" + TimeUnit.NANOSECONDS.toMillis(mBackoffNanos) + "ms"
+                        + " rejected=" + mRejected);
+            }
+        }
+    }
+
+    private int readFromBackend(NodeBackend backend, ByteBuffer buffer) {
+        for (int attempt = 0; attempt < 2; attempt++) {
+            try {
+                buffer.clear();
+                return backend.read(mPath, buffer);
+            } catch (IOException e) {
+                backend.reset(mPath);
+                mReadBreaker.mLastError = e;
+            }
+        }
+        return -1;
+    }
+
+    private boolean writeToBackend(NodeBackend backend, ByteBuffer buffer) {
+        for (int attempt = 0; attempt < 2; attempt++) {
+            try {
+                buffer.rewind();
+                backend.write(mPath, buffer);
+                return true;
+            } catch (IOException e) {
+                backend.reset(mPath);
+                mWriteBreaker.mLastError = e;
+            }
+        }
+        return false;
+    }
+}
@@ -18,6 +18,8 @@ package org.lineageos.hardware;
 
 import lineageos.hardware.TouchscreenGesture;
 
+import java.util.BitSet;
+
 /**
  * Touchscreen gestures API
  *
@@ -35,6 +37,12 @@ import lineageos.hardware.TouchscreenGesture;
  */
 public class TouchscreenGestures {
 
+    private static volatile TouchscreenGesture[] sAvailableGestures;
+
+    /* Last known state of the gestures whose ids are set in sKnownGestures */
+    private static final BitSet sEnabledGestures = new BitSet();
+    private static final BitSet sKnownGestures = new BitSet();
+
     /**
      * Whether device supports touchscreen gestures
      *
@@ -51,11 +59,19 @@ public class TouchscreenGestures {
      * It is the responsibility of the upper layers to
      * map the name to a human-readable format or perform translation.
      *
+     * The list is only queried once, and the returned array is shared
+     * between all callers, so it must not be modified.
+     *
      * @return TouchscreenGesture[] An array of the touchscreen gestures
      *                              available on a device
      */
     public static TouchscreenGesture[] getAvailableGestures() {
-        throw new UnsupportedOperationException();
+        TouchscreenGesture[] gestures = sAvailableGestures;
+        if (gestures == null) {
+            gestures = readAvailableGestures();
+            sAvailableGestures = gestures;
+        }
+        return gestures;
     }
 
     /**
@@ -69,6 +85,64 @@ public class TouchscreenGestures {
      */
     public static boolean setGestureEnabled(
             final TouchscreenGesture gesture, final boolean state) {
+        synchronized (sEnabledGestures) {
+            return applyGestureEnabled(gesture, state);
+        }
+    }
+
+    /**
+     * This method allows to set the activation status of all gestures
+     * at once, e.g. when restoring the user's configuration. Only the
+     * gestures whose state differs from the last known one are written.
+     *
+     * @param enabled The ids of the gestures to be activated, all
+     *        other available gestures are deactivated
+     *
+     * @return boolean Must be false if any gesture could not be set;
+     *         true in any other case.
+     */
+    public static boolean setGesturesEnabled(final BitSet enabled) {
+        boolean result = true;
+        synchronized (sEnabledGestures) {
+            for (TouchscreenGesture gesture : getAvailableGestures()) {
+                boolean state = enabled.get(gesture.id);
+                if (sKnownGestures.get(gesture.id)
+                        && sEnabledGestures.get(gesture.id) == state) {
+                    continue;
+                }
+                result &= applyGestureEnabled(gesture, state);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Same as setGesturesEnabled(BitSet), for gesture ids below 64.
+     *
+     * @param enabled A mask with bit n set if the gesture with id n
+     *        is to be activated
+     */
+    public static boolean setGesturesEnabled(final long enabled) {
+        return setGesturesEnabled(BitSet.valueOf(new long[] { enabled }));
+    }
+
+    private static boolean applyGestureEnabled(
+            final TouchscreenGesture gesture, final boolean state) {
+        if (!writeGestureEnabled(gesture, state)) {
+            sKnownGestures.clear(gesture.id);
+            return false;
+        }
+        sEnabledGestures.set(gesture.id, state);
+        sKnownGestures.set(gesture.id);
+        return true;
+    }
+
+    private static TouchscreenGesture[] readAvailableGestures() {
+        throw new UnsupportedOperationException();
+    }
+
+    private static boolean writeGestureEnabled(
+            final TouchscreenGesture gesture, final boolean state) {
         return false;
     }
 }
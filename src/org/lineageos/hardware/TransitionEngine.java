@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2018 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lineageos.hardware;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+/**
+ * Smooth transitions for multi-channel integer tunables
+ *
+ * Linearly interpolates every channel from its current value to a target
+ * over a given duration, writing at most maxRate times per second. Every
+ * write schedules the next one, on NodeExecutor under the key of the
+ * tunable, so steps stay in order with its other deferred writes. Starting
+ * a new transition while one is running retargets it from wherever it
+ * currently is, without rescheduling.
+ *
+ * The clock and the scheduler can be replaced, so that ramps can be driven
+ * deterministically by running the scheduled steps by hand.
+ */
+final class TransitionEngine {
+
+    /**
+     * Runs a task after a delay
+     */
+    interface Scheduler {
+        Future<?> schedule(Runnable task, long delayNanos);
+    }
+
+    private final int mChannels;
+    private final long mPeriodNanos;
+    private final Predicate<int[]> mSink;
+    private final LongSupplier mClock;
+    private final Scheduler mScheduler;
+
+    private final int[] mFrom;
+    private final int[] mTo;
+    private final int[] mCurrent;
+    private final int[] mOutput;
+
+    private long mStartNanos;
+    private long mDurationNanos;
+    private long mNextNanos;
+    private boolean mRunning;
+    /* Changes whenever a chain of steps is started or stopped */
+    private int mChain;
+    private Future<?> mTask;
+
+    /**
+     * @param key the NodeExecutor key of the tunable
+     * @param sink writes the interpolated values, returns false on failure
+     */
+    TransitionEngine(int channels, int maxRate, String key, Predicate<int[]> sink) {
+        this(channels, maxRate, sink, System::nanoTime, (task, delayNanos) ->
+                NodeExecutor.schedule(key, task, delayNanos, TimeUnit.NANOSECONDS));
+    }
+
+    TransitionEngine(int channels, int maxRate, Predicate<int[]> sink,
+            LongSupplier clock, Scheduler scheduler) {
+        mChannels = channels;
+        mPeriodNanos = TimeUnit.SECONDS.toNanos(1) / maxRate;
+        mSink = sink;
+        mClock = clock;
+        mScheduler = scheduler;
+        mFrom = new int[channels];
+        mTo = new int[channels];
+        mCurrent = new int[channels];
+        mOutput = new int[channels];
+    }
+
+    /**
+     * Ramp towards target. The starting point is the current position of a
+     * running transition, or else whatever the current supplier returns.
+     *
+     * @param current supplies the current hardware values if no transition
+     * is running, or returns false if they are unknown
+     */
+    synchronized void start(int[] target, long durationMillis, Predicate<int[]> current) {
+        if (mRunning) {
+            interpolate(mClock.getAsLong());
+            System.arraycopy(mCurrent, 0, mFrom, 0, mChannels);
+        } else if (!current.test(mFrom)) {
+            // Nothing to ramp from, jump straight to the target
+            System.arraycopy(target, 0, mFrom, 0, mChannels);
+        }
+        System.arraycopy(target, 0, mTo, 0, mChannels);
+        mStartNanos = mClock.getAsLong();
+        mDurationNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, durationMillis));
+        if (!mRunning) {
+            mRunning = true;
+            mChain++;
+            mNextNanos = mStartNanos;
+            scheduleStep(0);
+        }
+    }
+
+    /**
+     * Stop the running transition where it is.
+     */
+    synchronized void cancel() {
+        if (mTask != null) {
+            mTask.cancel(false);
+            mTask = null;
+        }
+        mRunning = false;
+        mChain++;
+    }
+
+    synchronized boolean isRunning() {
+        return mRunning;
+    }
+
+    private void scheduleStep(long delayNanos) {
+        final int chain = mChain;
+        mTask = mScheduler.schedule(() -> step(chain), delayNanos);
+    }
+
+    private void step(int chain) {
+        boolean done;
+        long start;
+        synchronized (this) {
+            if (!mRunning || chain != mChain) {
+                return;
+            }
+            done = interpolate(mClock.getAsLong());
+            System.arraycopy(mCurrent, 0, mOutput, 0, mChannels);
+            start = mStartNanos;
+            if (done) {
+                cancel();
+            }
+        }
+        boolean result = mSink.test(mOutput);
+        synchronized (this) {
+            if (chain != mChain) {
+                // Done, cancelled or restarted in the meantime
+                return;
+            }
+            if (!result && mStartNanos == start) {
+                // The hardware refused the value, there is no point in going
+                // on unless the transition was retargeted in the meantime
+                cancel();
+                return;
+            }
+            mNextNanos += mPeriodNanos;
+            scheduleStep(Math.max(0, mNextNanos - mClock.getAsLong()));
+        }
+    }
+
+    private boolean interpolate(long now) {
+        long elapsed = now - mStartNanos;
+        if (mDurationNanos == 0 || elapsed >= mDurationNanos) {
+            System.arraycopy(mTo, 0, mCurrent, 0, mChannels);
+            return true;
+        }
+        double fraction = Math.max(0, (double) elapsed / mDurationNanos);
+        for (int i = 0; i < mChannels; i++) {
+            mCurrent[i] = mFrom[i] + (int) Math.round((mTo[i] - mFrom[i]) * fraction);
+        }
+        return false;
+    }
+}
@@ -16,9 +16,7 @@
 
 package org.lineageos.hardware;
 
-import org.lineageos.internal.util.FileUtils;
-
-import android.util.Log;
+import lineageos.hardware.LineageHardwareManager;
 
 public class VibratorHW {
 
@@ -29,30 +27,32 @@ public class VibratorHW {
     private static final String MAX_PATH = "/sys/class/timed_output/vibrator/vtg_max";
     private static final String MIN_PATH = "/sys/class/timed_output/vibrator/vtg_min";
 
+    private static final SysfsNode DEFAULT = SysfsNode.get(DEFAULT_PATH);
+    private static final SysfsNode LEVEL = SysfsNode.get(LEVEL_PATH);
+    private static final SysfsNode MAX = SysfsNode.get(MAX_PATH);
+    private static final SysfsNode MIN = SysfsNode.get(MIN_PATH);
+
+    static {
+        HardwareListeners.watch(LineageHardwareManager.FEATURE_VIBRATOR, LEVEL);
+    }
+
     public static boolean isSupported() {
-        return FileUtils.isFileReadable(LEVEL_PATH) &&
-                FileUtils.isFileWritable(LEVEL_PATH) &&
-                FileUtils.isFileReadable(DEFAULT_PATH) &&
-                FileUtils.isFileReadable(MAX_PATH) &&
-                FileUtils.isFileReadable(MIN_PATH);
+        return HardwareCapabilities.isSupported(LineageHardwareManager.FEATURE_VIBRATOR,
+                () -> LEVEL.isReadable() &&
+                        LEVEL.isWritable() &&
+                        DEFAULT.isReadable() &&
+                        MAX.isReadable() &&
+                        MIN.isReadable());
     }
 
     public static int getMaxIntensity() {
-        try {
-            return Integer.parseInt(FileUtils.readOneLine(MAX_PATH));
-        } catch (Exception e) {
-            Log.e(TAG, e.getMessage(), e);
-        }
-        return -1;
+        int intensity = CapabilityManifest.getVibratorMaxIntensity();
+        return intensity >= 0 ? intensity : MAX.readInt(-1);
     }
 
     public static int getMinIntensity() {
-        try {
-            return Integer.parseInt(FileUtils.readOneLine(MIN_PATH));
-        } catch (Exception e) {
-            Log.e(TAG, e.getMessage(), e);
-        }
-        return -1;
+        int intensity = CapabilityManifest.getVibratorMinIntensity();
+        return intensity >= 0 ? intensity : MIN.readInt(-1);
     }
 
     public static int getWarningThreshold() {
@@ -60,24 +60,15 @@ public class VibratorHW {
     }
 
     public static int getCurIntensity() {
-        try {
-            return Integer.parseInt(FileUtils.readOneLine(LEVEL_PATH));
-        } catch (Exception e) {
-            Log.e(TAG, e.getMessage(), e);
-        }
-        return -1;
+        return LEVEL.readInt(-1);
     }
 
     public static int getDefaultIntensity() {
-        try {
-            return Integer.parseInt(FileUtils.readOneLine(DEFAULT_PATH));
-        } catch (Exception e) {
-            Log.e(TAG, e.getMessage(), e);
-        }
-        return -1;
+        int intensity = CapabilityManifest.getVibratorDefaultIntensity();
+        return intensity >= 0 ? intensity : DEFAULT.readInt(-1);
     }
 
     public static boolean setIntensity(int intensity) {
-        return FileUtils.writeLine(LEVEL_PATH, String.valueOf(intensity));
+        return LEVEL.writeInt(intensity);
     }
 }
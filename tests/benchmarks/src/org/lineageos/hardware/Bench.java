@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2018 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lineageos.hardware;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Minimal benchmark runner
+ *
+ * Every case runs for a warmup period and then a measurement period, on
+ * the given number of threads at once. It reports the throughput, the
+ * bytes allocated per operation and the latency percentiles of NodeStats.
+ * Where the kernel provides /proc/thread-self/io, it also reports the
+ * read and write syscalls per operation. Those counters include preads
+ * and pwrites, but not opens, closes or truncates.
+ * Timing every operation costs a few tens of nanoseconds, which is part of
+ * the reported latencies. Every thread keeps its own latencies, so that
+ * the threads don't contend on the histogram, and those of the first one
+ * are reported.
+ */
+final class Bench {
+
+    interface Operation {
+        /**
+         * @param iteration counts up from 0 on every thread
+         * @return anything derived from the result, so it is not optimized away
+         */
+        long run(int iteration) throws Exception;
+    }
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static final Path THREAD_IO = Paths.get("/proc/thread-self/io");
+
+    private final long mWarmupNanos;
+    private final long mMeasureNanos;
+    private final String mFilter;
+    private final PrintWriter mOut;
+
+    private volatile long mSink;
+
+    /**
+     * @param filter only cases whose name contains it are run, null for all
+     */
+    Bench(long measureMillis, String filter, PrintWriter out) {
+        mWarmupNanos = TimeUnit.MILLISECONDS.toNanos(measureMillis) / 4;
+        mMeasureNanos = TimeUnit.MILLISECONDS.toNanos(measureMillis);
+        mFilter = filter;
+        mOut = out;
+    }
+
+    void run(String name, Operation operation) {
+        run(name, 1, operation);
+    }
+
+    void run(String name, int threads, Operation operation) {
+        if (mFilter != null && !name.contains(mFilter)) {
+            return;
+        }
+        runPhase(threads, operation, mWarmupNanos, new NodeStats[threads]);
+        NodeStats[] latencies = new NodeStats[threads];
+        long[] totals = runPhase(threads, operation, mMeasureNanos, latencies);
+        long operations = Math.max(1, totals[0]);
+        double seconds = mMeasureNanos / 1e9;
+        mOut.printf("%s x%d: %.0f ops/s, %.1f B/op", name, threads,
+                totals[0] / seconds, (double) totals[1] / operations);
+        if (totals[2] >= 0) {
+            mOut.printf(", %.2f syscalls/op", (double) totals[2] / operations);
+        }
+        mOut.println();
+        latencies[0].dump(mOut, "latency");
+        mOut.flush();
+    }
+
+    /**
+     * @param latencies filled with the latencies of each thread
+     * @return the number of operations, the bytes allocated by them and
+     * their read and write syscalls, or -1 for those if they can't be counted
+     */
+    private long[] runPhase(int threads, Operation operation, long nanos,
+            NodeStats[] latencies) {
+        final long[] operations = new long[threads];
+        final long[] allocated = new long[threads];
+        final long[] syscalls = new long[threads];
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            final int index = t;
+            final NodeStats latency = new NodeStats();
+            latencies[t] = latency;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long sink = 0;
+                int iteration = 0;
+                long id = Thread.currentThread().getId();
+                // Sampled outside of the allocation counting
+                long calls = syscalls();
+                long bytes = THREADS.getThreadAllocatedBytes(id);
+                long end = System.nanoTime() + nanos;
+                long now;
+                do {
+                    long begin = System.nanoTime();
+                    boolean success = true;
+                    try {
+                        sink += operation.run(iteration++);
+                    } catch (Exception e) {
+                        success = false;
+                    }
+                    now = System.nanoTime();
+                    latency.record(now - begin, success);
+                } while (now < end);
+                allocated[index] = THREADS.getThreadAllocatedBytes(id) - bytes;
+                syscalls[index] = calls < 0 ? -1 : syscalls() - calls;
+                operations[index] = iteration;
+                mSink += sink;
+                done.countDown();
+            }, "Bench-" + t);
+            thread.start();
+        }
+        start.countDown();
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        long[] totals = new long[3];
+        for (int t = 0; t < threads; t++) {
+            totals[0] += operations[t];
+            totals[1] += allocated[t];
+            totals[2] = syscalls[t] < 0 || totals[2] < 0 ? -1 : totals[2] + syscalls[t];
+        }
+        return totals;
+    }
+
+    /**
+     * @return the read and write syscalls of the calling thread so far, or
+     * -1 if the kernel doesn't tell
+     */
+    private static long syscalls() {
+        try {
+            long count = 0;
+            for (String line : Files.readAllLines(THREAD_IO)) {
+                if (line.startsWith("syscr:") || line.startsWith("syscw:")) {
+                    count += Long.parseLong(line.substring(6).trim());
+                }
+            }
+            return count;
+        } catch (IOException | RuntimeException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright (C) 2018 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lineageos.hardware;
+
+import org.lineageos.internal.util.FileUtils;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Benchmarks of the getters and setters of every tunable class
+ *
+ * Measures the class initialization cost of every class of the library,
+ * then the tunables against the in-memory backend, a fake sysfs tree on
+ * tmpfs, or both, and finally how read-modify-write cycles scale with the
+ * number of threads. On tmpfs, the FileUtils line I/O that the tunables
+ * used before SysfsNode is measured on the same nodes for comparison:
+ *
+ *   java -jar LineageHardwareBenchmarks.jar [--backend=memory|tmpfs|all]
+ *           [--time=millis] [filter]
+ *
+ * Only cases whose name contains the filter are run.
+ */
+public final class Benchmarks {
+
+    private static final int[] CONTENTION_THREADS = { 2, 4, 8 };
+
+    private static final int[] SCALING_THREADS = { 1, 2, 4, 8 };
+
+    /* Models a driver that takes a while to answer */
+    private static final long SCALING_LATENCY_NANOS = 20000;
+
+    private static final String[] TOGGLE_NAMES = {
+        "AdaptiveBacklight", "AutoContrast", "ColorEnhancement", "ReadingEnhancement"
+    };
+
+    private Benchmarks() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        String backend = "all";
+        long measureMillis = 1000;
+        String filter = null;
+        for (String arg : args) {
+            if (arg.startsWith("--backend=")) {
+                backend = arg.substring("--backend=".length());
+            } else if (arg.startsWith("--time=")) {
+                measureMillis = Long.parseLong(arg.substring("--time=".length()));
+            } else {
+                filter = arg;
+            }
+        }
+
+        PrintWriter out = new PrintWriter(System.out);
+        Bench bench = new Bench(measureMillis, filter, out);
+        out.println("# Class initialization");
+        ClassInit.run(bench);
+        if (backend.equals("memory") || backend.equals("all")) {
+            out.println("# MemoryBackend");
+            SysfsNode.setBackend(FakeSysfs.createInMemory());
+            runAll(bench);
+        }
+        if (backend.equals("tmpfs") || backend.equals("all")) {
+            try (FakeSysfs sysfs = FakeSysfs.create()) {
+                out.println("# SysfsBackend in " + sysfs.getRoot());
+                SysfsNode.setBackend(sysfs);
+                runAll(bench);
+                out.println("# FileUtils vs SysfsBackend in " + sysfs.getRoot());
+                fileUtils(bench, sysfs);
+            }
+        }
+        out.println("# Scaling");
+        scaling(bench);
+        out.flush();
+    }
+
+    private static void runAll(Bench bench) {
+        tunables(bench);
+        contention(bench);
+    }
+
+    private static void tunables(Bench bench) {
+        bench.run("AdaptiveBacklight.isSupported", i -> flag(AdaptiveBacklight.isSupported()));
+        bench.run("AdaptiveBacklight.isEnabled", i -> flag(AdaptiveBacklight.isEnabled()));
+        bench.run("AdaptiveBacklight.setEnabled",
+                i -> flag(AdaptiveBacklight.setEnabled(odd(i))));
+
+        bench.run("AutoContrast.isEnabled", i -> flag(AutoContrast.isEnabled()));
+        bench.run("AutoContrast.setEnabled", i -> flag(AutoContrast.setEnabled(odd(i))));
+
+        bench.run("ColorBalance.getValue", i -> ColorBalance.getValue());
+        bench.run("ColorBalance.setValue", i -> flag(ColorBalance.setValue(i & 0xff)));
+
+        bench.run("ColorEnhancement.isEnabled", i -> flag(ColorEnhancement.isEnabled()));
+        bench.run("ColorEnhancement.setEnabled",
+                i -> flag(ColorEnhancement.setEnabled(odd(i))));
+
+        bench.run("DisplayColorCalibration.getCurColors",
+                i -> DisplayColorCalibration.getCurColors().length());
+        final int[] rgb = new int[3];
+        bench.run("DisplayColorCalibration.getCurColors(int[])",
+                i -> flag(DisplayColorCalibration.getCurColors(rgb)));
+        bench.run("DisplayColorCalibration.setColors",
+                i -> flag(DisplayColorCalibration.setColors(odd(i)
+                        ? "32768 32768 32768" : "32000 32000 32000")));
+        bench.run("DisplayColorCalibration.setColorsPacked",
+                i -> flag(DisplayColorCalibration.setColorsPacked(
+                        PackedColors.pack(32000 + (i & 0xff), 32768, 32768))));
+
+        bench.run("DisplayModeControl.getAvailableModes",
+                i -> DisplayModeControl.getAvailableModes().length);
+        bench.run("DisplayModeControl.getDefaultMode",
+                i -> DisplayModeControl.getDefaultMode() != null ? 1 : 0);
+
+        bench.run("HighTouchSensitivity.isEnabled", i -> flag(HighTouchSensitivity.isEnabled()));
+        bench.run("HighTouchSensitivity.setEnabled",
+                i -> flag(HighTouchSensitivity.setEnabled(odd(i))));
+
+        bench.run("KeyDisabler.isActive", i -> flag(KeyDisabler.isActive()));
+        // The dummy can't write, so only the redundant transition is measured
+        bench.run("KeyDisabler.setActive", i -> flag(KeyDisabler.setActive(false)));
+
+        bench.run("PictureAdjustment.getHSIC", i -> PictureAdjustment.getHSIC() != null ? 1 : 0);
+        bench.run("PictureAdjustment.getDefaultHSIC",
+                i -> PictureAdjustment.getDefaultHSIC() != null ? 1 : 0);
+
+        bench.run("ReadingEnhancement.isEnabled", i -> flag(ReadingEnhancement.isEnabled()));
+        bench.run("ReadingEnhancement.setEnabled",
+                i -> flag(ReadingEnhancement.setEnabled(odd(i))));
+
+        bench.run("SunlightEnhancement.isEnabled", i -> flag(SunlightEnhancement.isEnabled()));
+        bench.run("SunlightEnhancement.setEnabled",
+                i -> flag(SunlightEnhancement.setEnabled(odd(i))));
+
+        bench.run("TouchscreenGestures.isSupported",
+                i -> flag(TouchscreenGestures.isSupported()));
+
+        bench.run("TouchscreenHovering.isEnabled", i -> flag(TouchscreenHovering.isEnabled()));
+        bench.run("TouchscreenHovering.setEnabled",
+                i -> flag(TouchscreenHovering.setEnabled(odd(i))));
+
+        bench.run("VibratorHW.getCurIntensity", i -> VibratorHW.getCurIntensity());
+        bench.run("VibratorHW.getMaxIntensity", i -> VibratorHW.getMaxIntensity());
+        bench.run("VibratorHW.getDefaultIntensity", i -> VibratorHW.getDefaultIntensity());
+        bench.run("VibratorHW.setIntensity", i -> flag(VibratorHW.setIntensity(i % 100)));
+    }
+
+    /**
+     * The same reads and writes as the old tunables, which opened, read or
+     * wrote and closed the node with FileUtils every time, and the same
+     * through a pooled node. Both go to the same file of the tree.
+     */
+    private static void fileUtils(Bench bench, FakeSysfs sysfs) {
+        final String path = "/sys/class/timed_output/vibrator/vtg_level";
+        final String file = sysfs.getRoot() + path;
+        final SysfsNode node = SysfsNode.get(path);
+
+        bench.run("io.FileUtils.readOneLine",
+                i -> Integer.parseInt(FileUtils.readOneLine(file)));
+        bench.run("io.SysfsNode.readInt", i -> node.readInt(-1));
+
+        bench.run("io.FileUtils.writeLine",
+                i -> flag(FileUtils.writeLine(file, String.valueOf(i % 100))));
+        bench.run("io.SysfsNode.writeInt", i -> flag(node.writeInt(i % 100)));
+    }
+
+    private static void contention(Bench bench) {
+        for (int threads : CONTENTION_THREADS) {
+            // All threads on the same node, half of them writing
+            bench.run("contention.AdaptiveBacklight", threads,
+                    i -> odd(i) ? flag(AdaptiveBacklight.setEnabled((i & 2) != 0))
+                            : flag(AdaptiveBacklight.isEnabled()));
+
+            // Every thread on a node of its own, as far as there are enough
+            bench.run("contention.toggles", threads, i -> {
+                int index = (int) (Thread.currentThread().getId() % TOGGLE_NAMES.length);
+                return toggle(index, odd(i));
+            });
+
+            bench.run("contention.VibratorHW", threads,
+                    i -> odd(i) ? flag(VibratorHW.setIntensity(i % 100))
+                            : VibratorHW.getCurIntensity());
+
+            // Input path queries while pocket detection keeps setting the
+            // state, which the dummy can only do redundantly
+            bench.run("contention.KeyDisabler.isActive", threads,
+                    i -> flag(KeyDisabler.isActive()));
+            bench.run("contention.KeyDisabler.isActive+setActive", threads,
+                    i -> (i & 15) == 0 ? flag(KeyDisabler.setActive(false))
+                            : flag(KeyDisabler.isActive()));
+        }
+    }
+
+    /**
+     * Read-modify-write cycles, made atomic by holding the node, either all
+     * on one node or each thread on a node of its own. Throughput should
+     * stay flat on the shared node and grow with the threads on separate
+     * ones, as far as there are cores.
+     */
+    private static void scaling(Bench bench) {
+        MemoryBackend backend = new MemoryBackend();
+        backend.setLatency(SCALING_LATENCY_NANOS, SCALING_LATENCY_NANOS);
+        int maxThreads = SCALING_THREADS[SCALING_THREADS.length - 1];
+        final SysfsNode shared = SysfsNode.get("/bench/shared");
+        final SysfsNode[] separate = new SysfsNode[maxThreads];
+        backend.put(shared.getPath(), "0");
+        for (int i = 0; i < maxThreads; i++) {
+            separate[i] = SysfsNode.get("/bench/separate" + i);
+            backend.put(separate[i].getPath(), "0");
+        }
+        SysfsNode.setBackend(backend);
+
+        for (int threads : SCALING_THREADS) {
+            bench.run("scaling.shared", threads, i -> increment(shared));
+        }
+        for (int threads : SCALING_THREADS) {
+            final int count = threads;
+            bench.run("scaling.separate", threads, i -> increment(
+                    separate[(int) (Thread.currentThread().getId() % count)]));
+        }
+    }
+
+    private static long increment(SysfsNode node) {
+        synchronized (node) {
+            int value = node.readInt(0) + 1;
+            return flag(node.writeInt(value)) + value;
+        }
+    }
+
+    private static long toggle(int index, boolean enabled) {
+        switch (index) {
+            case 0:
+                return flag(AdaptiveBacklight.setEnabled(enabled));
+            case 1:
+                return flag(AutoContrast.setEnabled(enabled));
+            case 2:
+                return flag(ColorEnhancement.setEnabled(enabled));
+            default:
+                return flag(ReadingEnhancement.setEnabled(enabled));
+        }
+    }
+
+    private static boolean odd(int iteration) {
+        return (iteration & 1) != 0;
+    }
+
+    private static long flag(boolean value) {
+        return value ? 1 : 0;
+    }
+}
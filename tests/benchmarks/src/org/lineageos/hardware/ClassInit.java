@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2018 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lineageos.hardware;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Stream;
+
+/**
+ * Cost of loading and initializing every class of the library
+ *
+ * Each operation defines the package anew in a fresh class loader and
+ * initializes one class, with whatever else that pulls in, as happens the
+ * first time system_server touches it. The class files are read once up
+ * front, so reading the jar is not part of the cost.
+ */
+final class ClassInit {
+
+    private static final String PACKAGE = "org.lineageos.hardware.";
+
+    /* The benchmark itself, which shares the package */
+    private static final String[] EXCLUDED = {
+        "Bench", "Benchmarks", "ClassInit", "FakeSysfs"
+    };
+
+    private ClassInit() {
+    }
+
+    static void run(Bench bench) throws IOException {
+        Map<String, byte[]> classes = readClasses();
+        List<String> names = new ArrayList<>();
+        for (String name : classes.keySet()) {
+            if (!name.contains("$") && !name.endsWith("Test") && !isExcluded(name)) {
+                names.add(name);
+            }
+        }
+        names.sort(null);
+        ClassLoader parent = ClassInit.class.getClassLoader();
+        for (String name : names) {
+            bench.run("init." + name.substring(PACKAGE.length()), i -> {
+                ClassLoader loader = new IsolatingLoader(parent, classes);
+                return Class.forName(name, true, loader).getModifiers();
+            });
+        }
+    }
+
+    private static boolean isExcluded(String name) {
+        for (String excluded : EXCLUDED) {
+            if (name.equals(PACKAGE + excluded) || name.startsWith(PACKAGE + excluded + "$")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Map<String, byte[]> readClasses() throws IOException {
+        Path location;
+        try {
+            location = Paths.get(ClassInit.class.getProtectionDomain().getCodeSource()
+                    .getLocation().toURI());
+        } catch (URISyntaxException e) {
+            throw new IOException(e);
+        }
+        String directory = PACKAGE.replace('.', '/');
+        Map<String, byte[]> classes = new HashMap<>();
+        if (Files.isDirectory(location)) {
+            try (Stream<Path> files = Files.list(location.resolve(directory))) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    String fileName = file.getFileName().toString();
+                    if (fileName.endsWith(".class")) {
+                        classes.put(PACKAGE + fileName.substring(0, fileName.length() - 6),
+                                Files.readAllBytes(file));
+                    }
+                }
+            }
+            return classes;
+        }
+        try (JarFile jar = new JarFile(location.toFile())) {
+            Enumeration<JarEntry> entries = jar.entries();
+            while (entries.hasMoreElements()) {
+                JarEntry entry = entries.nextElement();
+                String entryName = entry.getName();
+                if (entryName.startsWith(directory) && entryName.endsWith(".class")
+                        && entryName.indexOf('/', directory.length()) < 0) {
+                    try (InputStream in = jar.getInputStream(entry)) {
+                        classes.put(entryName.substring(0, entryName.length() - 6)
+                                .replace('/', '.'), readAll(in));
+                    }
+                }
+            }
+        }
+        return classes;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int length;
+        while ((length = in.read(buffer)) > 0) {
+            out.write(buffer, 0, length);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Defines the classes of the library itself, everything else comes
+     * from the parent.
+     */
+    private static final class IsolatingLoader extends ClassLoader {
+        private final Map<String, byte[]> mClasses;
+
+        IsolatingLoader(ClassLoader parent, Map<String, byte[]> classes) {
+            super(parent);
+            mClasses = classes;
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve)
+                throws ClassNotFoundException {
+            byte[] bytes = mClasses.get(name);
+            if (bytes == null) {
+                return super.loadClass(name, resolve);
+            }
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> loaded = findLoadedClass(name);
+                if (loaded == null) {
+                    loaded = defineClass(name, bytes, 0, bytes.length);
+                }
+                if (resolve) {
+                    resolveClass(loaded);
+                }
+                return loaded;
+            }
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2018 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lineageos.hardware;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Fake sysfs tree holding every node the dummy classes use
+ *
+ * The tree is created under /dev/shm where that exists, so that the real
+ * SysfsBackend is measured against tmpfs, and otherwise in the temporary
+ * directory. Paths are mapped into the tree, the classes keep using their
+ * real node paths.
+ *
+ * Unlike sysfs attributes, regular files keep whatever a shorter write
+ * did not overwrite, so every write is followed by a truncate to its
+ * length. That costs one more syscall per write than on a device.
+ */
+final class FakeSysfs implements NodeBackend, AutoCloseable {
+
+    private static final String[][] NODES = {
+        { "/sys/class/graphics/fb0/aco", "0" },
+        { "/sys/class/graphics/fb0/cabc", "0" },
+        { "/sys/class/graphics/fb0/color_enhance", "0" },
+        { "/sys/class/graphics/fb0/hbm", "0" },
+        { "/sys/class/graphics/fb0/reading_mode", "0" },
+        { "/sys/class/graphics/fb0/rgb", "32768 32768 32768" },
+        { "/sys/class/timed_output/vibrator/vtg_default", "60" },
+        { "/sys/class/timed_output/vibrator/vtg_level", "60" },
+        { "/sys/class/timed_output/vibrator/vtg_max", "100" },
+        { "/sys/class/timed_output/vibrator/vtg_min", "0" },
+    };
+
+    private final Path mRoot;
+    private final SysfsBackend mBackend = new SysfsBackend();
+
+    /*
+     * Built up front and never modified, so lookups from any thread
+     * neither lock nor allocate
+     */
+    private final Map<String, Node> mNodes = new HashMap<>();
+
+    private static final class Node {
+        final String mPath;
+        /* Only used to truncate after writes */
+        final FileChannel mChannel;
+
+        Node(String path, FileChannel channel) {
+            mPath = path;
+            mChannel = channel;
+        }
+    }
+
+    private FakeSysfs(Path root) throws IOException {
+        mRoot = root;
+        for (String[] node : NODES) {
+            Path file = root.resolve(node[0].substring(1));
+            mNodes.put(node[0], new Node(file.toString(),
+                    FileChannel.open(file, StandardOpenOption.WRITE)));
+        }
+    }
+
+    static FakeSysfs create() throws IOException {
+        File shm = new File("/dev/shm");
+        Path root = shm.isDirectory() && shm.canWrite()
+                ? Files.createTempDirectory(shm.toPath(), "lineagehw")
+                : Files.createTempDirectory("lineagehw");
+        for (String[] node : NODES) {
+            Path file = root.resolve(node[0].substring(1));
+            Files.createDirectories(file.getParent());
+            Files.write(file, node[1].getBytes(StandardCharsets.US_ASCII));
+        }
+        return new FakeSysfs(root);
+    }
+
+    /**
+     * Fill a MemoryBackend with the same nodes.
+     */
+    static MemoryBackend createInMemory() {
+        MemoryBackend backend = new MemoryBackend();
+        for (String[] node : NODES) {
+            backend.put(node[0], node[1]);
+        }
+        return backend;
+    }
+
+    String getRoot() {
+        return mRoot.toString();
+    }
+
+    @Override
+    public int read(String path, ByteBuffer dst) throws IOException {
+        return mBackend.read(map(path), dst);
+    }
+
+    @Override
+    public void write(String path, ByteBuffer src) throws IOException {
+        int length = src.remaining();
+        mBackend.write(map(path), src);
+        Node node = mNodes.get(path);
+        if (node != null) {
+            node.mChannel.truncate(length);
+        }
+    }
+
+    @Override
+    public boolean exists(String path) {
+        return mBackend.exists(map(path));
+    }
+
+    @Override
+    public boolean isReadable(String path) {
+        return mBackend.isReadable(map(path));
+    }
+
+    @Override
+    public boolean isWritable(String path) {
+        return mBackend.isWritable(map(path));
+    }
+
+    @Override
+    public void reset(String path) {
+        mBackend.reset(map(path));
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Map.Entry<String, Node> node : mNodes.entrySet()) {
+            mBackend.reset(node.getValue().mPath);
+            node.getValue().mChannel.close();
+        }
+        try (Stream<Path> files = Files.walk(mRoot)) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    private String map(String path) {
+        Node node = mNodes.get(path);
+        // Nodes outside the tree don't exist either way
+        return node != null ? node.mPath : mRoot + path;
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2018 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.util;
+
+/**
+ * Host shim
+ */
+public final class Range<T extends Comparable<? super T>> {
+
+    private final T mLower;
+    private final T mUpper;
+
+    public Range(T lower, T upper) {
+        if (lower.compareTo(upper) > 0) {
+            throw new IllegalArgumentException("lower must be less than or equal to upper");
+        }
+        mLower = lower;
+        mUpper = upper;
+    }
+
+    public static <T extends Comparable<? super T>> Range<T> create(T lower, T upper) {
+        return new Range<T>(lower, upper);
+    }
+
+    public T getLower() {
+        return mLower;
+    }
+
+    public T getUpper() {
+        return mUpper;
+    }
+
+    public boolean contains(T value) {
+        return value.compareTo(mLower) >= 0 && value.compareTo(mUpper) <= 0;
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2018 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package lineageos.hardware;
+
+/**
+ * Host shim
+ */
+public class HSIC {
+
+    private final float mHue;
+    private final float mSaturation;
+    private final float mIntensity;
+    private final float mContrast;
+    private final float mSaturationThreshold;
+
+    public HSIC(float hue, float saturation, float intensity, float contrast,
+            float saturationThreshold) {
+        mHue = hue;
+        mSaturation = saturation;
+        mIntensity = intensity;
+        mContrast = contrast;
+        mSaturationThreshold = saturationThreshold;
+    }
+
+    public float getHue() {
+        return mHue;
+    }
+
+    public float getSaturation() {
+        return mSaturation;
+    }
+
+    public float getIntensity() {
+        return mIntensity;
+    }
+
+    public float getContrast() {
+        return mContrast;
+    }
+
+    public float getSaturationThreshold() {
+        return mSaturationThreshold;
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2018 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package lineageos.hardware;
+
+/**
+ * Host shim, only the feature bits
+ */
+public final class LineageHardwareManager {
+
+    public static final int FEATURE_ADAPTIVE_BACKLIGHT = 0x1;
+    public static final int FEATURE_COLOR_ENHANCEMENT = 0x2;
+    public static final int FEATURE_DISPLAY_COLOR_CALIBRATION = 0x4;
+    public static final int FEATURE_HIGH_TOUCH_SENSITIVITY = 0x10;
+    public static final int FEATURE_KEY_DISABLE = 0x20;
+    public static final int FEATURE_SUNLIGHT_ENHANCEMENT = 0x100;
+    public static final int FEATURE_VIBRATOR = 0x400;
+    public static final int FEATURE_TOUCH_HOVERING = 0x800;
+    public static final int FEATURE_AUTO_CONTRAST = 0x1000;
+    public static final int FEATURE_DISPLAY_MODES = 0x2000;
+    public static final int FEATURE_READING_ENHANCEMENT = 0x4000;
+    public static final int FEATURE_COLOR_BALANCE = 0x20000;
+    public static final int FEATURE_PICTURE_ADJUSTMENT = 0x40000;
+    public static final int FEATURE_TOUCHSCREEN_GESTURES = 0x80000;
+
+    private LineageHardwareManager() {
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2018 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lineageos.internal.util;
+
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+
+/**
+ * Host shim, what SysfsBackend uses plus the line I/O that the tunables
+ * used before it, for comparison. Same open, read or write and close per
+ * call as on the device.
+ */
+public final class FileUtils {
+
+    private static final String TAG = "FileUtils";
+
+    private FileUtils() {
+    }
+
+    public static String readOneLine(String fileName) {
+        String line = null;
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader(fileName), 512);
+            line = reader.readLine();
+        } catch (FileNotFoundException e) {
+            Log.w(TAG, "No such file " + fileName + " for reading", e);
+        } catch (IOException e) {
+            Log.e(TAG, "Could not read from file " + fileName, e);
+        } finally {
+            try {
+                if (reader != null) {
+                    reader.close();
+                }
+            } catch (IOException e) {
+                // Ignored, not much we can do anyway
+            }
+        }
+        return line;
+    }
+
+    public static boolean writeLine(String fileName, String value) {
+        BufferedWriter writer = null;
+        try {
+            writer = new BufferedWriter(new FileWriter(fileName));
+            writer.write(value);
+        } catch (FileNotFoundException e) {
+            Log.w(TAG, "No such file " + fileName + " for writing", e);
+            return false;
+        } catch (IOException e) {
+            Log.e(TAG, "Could not write to file " + fileName, e);
+            return false;
+        } finally {
+            try {
+                if (writer != null) {
+                    writer.close();
+                }
+            } catch (IOException e) {
+                // Ignored, not much we can do anyway
+            }
+        }
+        return true;
+    }
+
+    public static boolean fileExists(String fileName) {
+        return new File(fileName).exists();
+    }
+
+    public static boolean isFileReadable(String fileName) {
+        File file = new File(fileName);
+        return file.exists() && file.canRead();
+    }
+
+    public static boolean isFileWritable(String fileName) {
+        File file = new File(fileName);
+        return file.exists() && file.canWrite();
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2018 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.lineageos.hardware;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+/**
+ * A trace survives being saved and loaded, and replaying it makes the
+ * same operations reach the backend.
+ */
+public class NodeTraceTest {
+
+    private static final String LEVEL = "/sys/class/timed_output/vibrator/vtg_level";
+    private static final String RGB = "/sys/class/graphics/fb0/rgb";
+
+    private NodeBackend mPreviousBackend;
+
+    @Before
+    public void setUp() {
+        mPreviousBackend = SysfsNode.getBackend();
+    }
+
+    @After
+    public void tearDown() {
+        SysfsNode.setBackend(mPreviousBackend);
+        SysfsNode.setSkipRedundantWrites(false);
+    }
+
+    @Test
+    public void recordSaveLoadAndReplay() throws IOException {
+        NodeTrace trace = new NodeTrace();
+        SysfsNode.setBackend(trace.record(newBackend()));
+        SysfsNode level = SysfsNode.get(LEVEL);
+        SysfsNode rgb = SysfsNode.get(RGB);
+        level.writeInt(10);
+        level.writeInt(10);
+        assertEquals(10, level.readInt(-1));
+        rgb.writeInts(new int[] { 1, 2, 3 }, 3);
+        assertEquals("1 2 3", rgb.readLine());
+        assertEquals(5, trace.size());
+
+        NodeTrace loaded = NodeTrace.readFrom(new StringReader(save(trace)));
+        assertEquals(save(trace), save(loaded));
+
+        // Replaying has to reach the backend with every operation, even
+        // the repeated write that SysfsNode would otherwise skip
+        NodeTrace replayed = new NodeTrace();
+        MemoryBackend target = newBackend();
+        SysfsNode.setBackend(replayed.record(target));
+        SysfsNode.setSkipRedundantWrites(true);
+        assertTrue(loaded.replay() > 0);
+        assertTrue(SysfsNode.getSkipRedundantWrites());
+        assertEquals(save(trace), save(replayed));
+        assertEquals("10", target.get(LEVEL));
+        assertEquals("1 2 3", target.get(RGB));
+    }
+
+    @Test(expected = IOException.class)
+    public void malformedLinesAreRejected() throws IOException {
+        NodeTrace.readFrom(new StringReader(" R " + LEVEL + "\n"));
+    }
+
+    private static MemoryBackend newBackend() {
+        MemoryBackend backend = new MemoryBackend();
+        backend.put(LEVEL, "0\n");
+        backend.put(RGB, "0 0 0\n");
+        return backend;
+    }
+
+    private static String save(NodeTrace trace) {
+        StringWriter writer = new StringWriter();
+        trace.writeTo(new PrintWriter(writer));
+        return writer.toString();
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2018 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lineageos.hardware;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replays recorded lux traces through SunlightController and counts the
+ * resulting node writes.
+ */
+public class SunlightControllerTraceTest {
+
+    private static final String HBM = "/sys/class/graphics/fb0/hbm";
+    private static final String SRE = "/sys/class/graphics/fb0/sre";
+
+    private static final float ENTER_LUX = 5000;
+    private static final float EXIT_LUX = 3000;
+    private static final long MIN_DWELL_MILLIS = 5000;
+    private static final int WINDOW = 5;
+
+    private NodeBackend mPreviousBackend;
+    private NodeTrace mTrace;
+
+    @Before
+    public void setUp() {
+        MemoryBackend backend = new MemoryBackend();
+        // Whichever of the two the class resolved to, even in an earlier test
+        backend.put(HBM, "0");
+        backend.put(SRE, "0");
+        mTrace = new NodeTrace();
+        mPreviousBackend = SysfsNode.getBackend();
+        SysfsNode.setBackend(mTrace.record(backend));
+    }
+
+    @After
+    public void tearDown() {
+        SysfsNode.setBackend(mPreviousBackend);
+    }
+
+    @Test
+    public void nearThresholdIsDebounced() throws IOException {
+        long[][] samples = load("near_threshold.txt");
+        int naive = countNaiveTransitions(samples);
+        int writes = replay("near_threshold", samples);
+
+        // Never more than one transition per dwell time
+        long duration = samples[samples.length - 1][0] - samples[0][0];
+        assertTrue(writes <= duration / MIN_DWELL_MILLIS + 1);
+        assertTrue("expected far fewer writes than " + naive, writes * 10 < naive);
+    }
+
+    @Test
+    public void walkOutsideTogglesOnceEachWay() throws IOException {
+        long[][] samples = load("walk_outside.txt");
+        SunlightController controller = newController();
+        for (long[] sample : samples) {
+            controller.onLuxChanged(sample[1], sample[0]);
+        }
+        assertEquals(2, controller.getWriteCount());
+        assertEquals(2, mTrace.size());
+        assertFalse(controller.isEnabled());
+    }
+
+    /**
+     * @return the number of writes to the node
+     */
+    private int replay(String name, long[][] samples) {
+        SunlightController controller = newController();
+        for (long[] sample : samples) {
+            controller.onLuxChanged(sample[1], sample[0]);
+        }
+        System.out.println(name + ": " + samples.length + " samples, "
+                + countNaiveTransitions(samples) + " threshold crossings, "
+                + controller.getWriteCount() + " writes");
+        assertEquals(controller.getWriteCount(), mTrace.size());
+        return mTrace.size();
+    }
+
+    private static SunlightController newController() {
+        return new SunlightController(ENTER_LUX, EXIT_LUX, MIN_DWELL_MILLIS, WINDOW);
+    }
+
+    /**
+     * @return how often a caller toggling at ENTER_LUX would write
+     */
+    private static int countNaiveTransitions(long[][] samples) {
+        boolean enabled = false;
+        int transitions = 0;
+        for (long[] sample : samples) {
+            if ((sample[1] >= ENTER_LUX) != enabled) {
+                enabled = !enabled;
+                transitions++;
+            }
+        }
+        return transitions;
+    }
+
+    /**
+     * Traces hold one "timestamp_millis lux" pair per line, lines starting
+     * with # are comments.
+     */
+    private static long[][] load(String name) throws IOException {
+        List<long[]> samples = new ArrayList<>();
+        try (InputStream in = SunlightControllerTraceTest.class.getResourceAsStream(
+                "/lux/" + name)) {
+            assertNotNull("missing trace " + name, in);
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(in, StandardCharsets.US_ASCII));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.trim().split("\\s+");
+                samples.add(new long[] { Long.parseLong(fields[0]), Long.parseLong(fields[1]) });
+            }
+        }
+        return samples.toArray(new long[0][]);
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2018 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lineageos.hardware;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.function.IntSupplier;
+
+/**
+ * Integer and boolean reads must not allocate once warmed up.
+ */
+public class SysfsNodeAllocationTest {
+
+    private static final String CABC = "/sys/class/graphics/fb0/cabc";
+    private static final String VIBRATOR = "/sys/class/timed_output/vibrator/";
+    private static final String RGB = "/sys/class/graphics/fb0/rgb";
+
+    private static final int WARMUP_CALLS = 20000;
+    private static final int CALLS = 10000;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+
+    private NodeBackend mPreviousBackend;
+
+    @Before
+    public void setUp() {
+        MemoryBackend backend = new MemoryBackend();
+        backend.put(CABC, "1\n");
+        backend.put(VIBRATOR + "vtg_level", "42\n");
+        backend.put(VIBRATOR + "vtg_min", "0\n");
+        backend.put(VIBRATOR + "vtg_max", "100\n");
+        backend.put(VIBRATOR + "vtg_default", "60\n");
+        backend.put(RGB, "32768 16384 255\n");
+        mPreviousBackend = SysfsNode.getBackend();
+        SysfsNode.setBackend(backend);
+    }
+
+    @After
+    public void tearDown() {
+        SysfsNode.setBackend(mPreviousBackend);
+    }
+
+    @Test
+    public void readIntDoesNotAllocate() {
+        SysfsNode node = SysfsNode.get(VIBRATOR + "vtg_level");
+        assertEquals(42, node.readInt(-1));
+        assertNoAllocation("readInt", () -> node.readInt(-1));
+    }
+
+    @Test
+    public void readBooleanDoesNotAllocate() {
+        SysfsNode node = SysfsNode.get(CABC);
+        assertTrue(node.readBoolean());
+        assertNoAllocation("readBoolean", () -> node.readBoolean() ? 1 : 0);
+    }
+
+    @Test
+    public void readIntsDoesNotAllocate() {
+        SysfsNode node = SysfsNode.get(RGB);
+        int[] rgb = new int[3];
+        assertEquals(3, node.readInts(rgb));
+        assertNoAllocation("readInts", () -> node.readInts(rgb));
+    }
+
+    @Test
+    public void sysfsBackendDoesNotAllocate() throws IOException {
+        File file = mFolder.newFile("level");
+        Files.write(file.toPath(), "42\n".getBytes(StandardCharsets.US_ASCII));
+        File tuple = mFolder.newFile("rgb");
+        Files.write(tuple.toPath(), "32768 16384 255\n".getBytes(StandardCharsets.US_ASCII));
+        SysfsBackend backend = new SysfsBackend();
+        SysfsNode.setBackend(backend);
+        SysfsNode node = SysfsNode.get(file.getPath());
+        SysfsNode rgbNode = SysfsNode.get(tuple.getPath());
+        int[] rgb = new int[3];
+        try {
+            assertEquals(42, node.readInt(-1));
+            assertEquals(3, rgbNode.readInts(rgb));
+            assertNoAllocation("SysfsBackend readInt", () -> node.readInt(-1));
+            assertNoAllocation("SysfsBackend readBoolean", () -> node.readBoolean() ? 1 : 0);
+            assertNoAllocation("SysfsBackend readInts", () -> rgbNode.readInts(rgb));
+            // Same length as the contents, a regular file is not truncated
+            assertNoAllocation("SysfsBackend writeInt", () -> node.writeInt(42) ? 1 : 0);
+        } finally {
+            backend.reset(file.getPath());
+            backend.reset(tuple.getPath());
+        }
+    }
+
+    @Test
+    public void tunableGettersDoNotAllocate() {
+        assertTrue(AdaptiveBacklight.isEnabled());
+        assertEquals(42, VibratorHW.getCurIntensity());
+        assertNoAllocation("AdaptiveBacklight.isEnabled",
+                () -> AdaptiveBacklight.isEnabled() ? 1 : 0);
+        assertNoAllocation("VibratorHW.getCurIntensity", VibratorHW::getCurIntensity);
+        assertNoAllocation("VibratorHW.getMaxIntensity", VibratorHW::getMaxIntensity);
+        assertNoAllocation("VibratorHW.getMinIntensity", VibratorHW::getMinIntensity);
+        assertNoAllocation("VibratorHW.getDefaultIntensity",
+                VibratorHW::getDefaultIntensity);
+    }
+
+    private static void assertNoAllocation(String name, IntSupplier read) {
+        int sink = 0;
+        for (int i = 0; i < WARMUP_CALLS; i++) {
+            sink += read.getAsInt();
+        }
+        long id = Thread.currentThread().getId();
+        long before = THREADS.getThreadAllocatedBytes(id);
+        for (int i = 0; i < CALLS; i++) {
+            sink += read.getAsInt();
+        }
+        long allocated = THREADS.getThreadAllocatedBytes(id) - before;
+        // Less than a byte per call leaves room for one-off allocations of
+        // the runtime, anything done per call is at least 16 bytes
+        assertTrue(name + " allocated " + allocated + " bytes in " + CALLS + " calls ("
+                + sink + ")", allocated < CALLS);
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2018 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.lineageos.hardware;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Reads and writes of a node are left alone independently of each other.
+ */
+public class SysfsNodeBreakerTest {
+
+    private static final String PATH = "/sys/test/breaker";
+
+    /* More failures than it takes to leave a direction alone */
+    private static final int FAILURES = 5;
+
+    private NodeBackend mPreviousBackend;
+    private MemoryBackend mBackend;
+
+    @Before
+    public void setUp() {
+        mBackend = new MemoryBackend();
+        mPreviousBackend = SysfsNode.getBackend();
+        SysfsNode.setBackend(mBackend);
+    }
+
+    @After
+    public void tearDown() {
+        SysfsNode.setBackend(mPreviousBackend);
+    }
+
+    @Test
+    public void malformedContentsDoNotBlockWrites() {
+        mBackend.put(PATH, "not a number\n");
+        SysfsNode node = SysfsNode.get(PATH);
+        for (int i = 0; i < FAILURES; i++) {
+            assertEquals(-1, node.readInt(-1));
+        }
+        assertTrue(node.writeInt(7));
+        assertEquals("7", mBackend.get(PATH).trim());
+    }
+
+    @Test
+    public void failingWritesDoNotBlockReads() {
+        mBackend.put(PATH, "3\n", true, false);
+        SysfsNode node = SysfsNode.get(PATH);
+        for (int i = 0; i < FAILURES; i++) {
+            assertFalse(node.writeInt(7));
+        }
+        assertEquals(3, node.readInt(-1));
+    }
+
+    @Test
+    public void failingReadsAreLeftAlone() {
+        mBackend.put(PATH, "not a number\n");
+        SysfsNode node = SysfsNode.get(PATH);
+        for (int i = 0; i < FAILURES; i++) {
+            node.readInt(-1);
+        }
+        // Fixed behind our back, but the node is still being left alone
+        mBackend.put(PATH, "3\n");
+        assertEquals(-1, node.readInt(-1));
+    }
+}
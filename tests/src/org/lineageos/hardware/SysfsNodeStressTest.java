@@ -0,0 +1,309 @@
+/*
+ * Copyright (C) 2018 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lineageos.hardware;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Many threads on the same nodes at once. Operations on a node must take
+ * effect one at a time, as if in some order consistent with when they
+ * were made.
+ */
+public class SysfsNodeStressTest {
+
+    private static final int THREADS = 8;
+    private static final int ITERATIONS = 2000;
+
+    private static final String SHARED = "/stress/shared";
+
+    private MemoryBackend mBackend;
+    private OverlapCheckingBackend mChecker;
+    private NodeBackend mPreviousBackend;
+
+    @Before
+    public void setUp() {
+        mBackend = new MemoryBackend();
+        mBackend.put(SHARED, "0");
+        for (int i = 0; i < THREADS; i++) {
+            mBackend.put(SHARED + i, "0");
+        }
+        mChecker = new OverlapCheckingBackend(mBackend);
+        mPreviousBackend = SysfsNode.getBackend();
+        SysfsNode.setBackend(mChecker);
+    }
+
+    @After
+    public void tearDown() {
+        SysfsNode.setBackend(mPreviousBackend);
+    }
+
+    @Test
+    public void readModifyWriteUnderNodeLockLosesNoUpdates() throws Exception {
+        SysfsNode node = SysfsNode.get(SHARED);
+        runThreads(thread -> {
+            for (int i = 0; i < ITERATIONS; i++) {
+                synchronized (node) {
+                    node.writeInt(node.readInt(-1) + 1);
+                }
+            }
+        });
+        assertEquals(THREADS * ITERATIONS, node.readInt(-1));
+        assertNull(mChecker.mOverlap.get());
+    }
+
+    @Test
+    public void readsNeverGoBackInTime() throws Exception {
+        SysfsNode node = SysfsNode.get(SHARED);
+        AtomicReference<String> violation = new AtomicReference<>();
+        runThreads(thread -> {
+            if (thread == 0) {
+                // The only writer, counting up
+                for (int i = 1; i <= ITERATIONS * 4; i++) {
+                    node.writeInt(i);
+                }
+                return;
+            }
+            int last = 0;
+            for (int i = 0; i < ITERATIONS * 4; i++) {
+                int value = node.readInt(-1);
+                if (value < last) {
+                    violation.compareAndSet(null, "read " + value + " after " + last);
+                }
+                last = value;
+            }
+        });
+        assertNull(violation.get());
+        assertNull(mChecker.mOverlap.get());
+    }
+
+    @Test
+    public void tuplesAreNeverTorn() throws Exception {
+        SysfsNode node = SysfsNode.get(SHARED);
+        AtomicReference<String> violation = new AtomicReference<>();
+        runThreads(thread -> {
+            int[] values = new int[3];
+            for (int i = 0; i < ITERATIONS; i++) {
+                if ((i + thread) % 2 == 0) {
+                    int value = thread * ITERATIONS + i;
+                    values[0] = value;
+                    values[1] = value;
+                    values[2] = value;
+                    node.writeInts(values, 3);
+                } else if (node.readInts(values) == 3
+                        && (values[0] != values[1] || values[1] != values[2])) {
+                    violation.compareAndSet(null, values[0] + " " + values[1] + " "
+                            + values[2]);
+                }
+            }
+        });
+        assertNull(violation.get());
+        assertNull(mChecker.mOverlap.get());
+    }
+
+    @Test
+    public void separateNodesRunInParallel() throws Exception {
+        // Every thread holds its own node while waiting for all the others,
+        // which only works if no node lock blocks another node
+        CountDownLatch inside = new CountDownLatch(THREADS);
+        AtomicInteger timeouts = new AtomicInteger();
+        runThreads(thread -> {
+            SysfsNode node = SysfsNode.get(SHARED + thread);
+            synchronized (node) {
+                node.writeInt(thread);
+                inside.countDown();
+                try {
+                    if (!inside.await(10, TimeUnit.SECONDS)) {
+                        timeouts.incrementAndGet();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                assertEquals(thread, node.readInt(-1));
+            }
+        });
+        assertEquals(0, timeouts.get());
+    }
+
+    @Test
+    public void invalidationNeverWaitsForTheNode() throws Exception {
+        SysfsNode node = SysfsNode.get(SHARED);
+        CountDownLatch held = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        // Stands in for an operation that is stuck in the driver
+        Thread stuck = new Thread(() -> {
+            synchronized (node) {
+                held.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        stuck.start();
+        held.await();
+        try {
+            Thread invalidator = new Thread(() -> {
+                node.invalidate();
+                SysfsNode.invalidateAll();
+                SysfsNode.setBackend(mChecker);
+            });
+            invalidator.start();
+            invalidator.join(TimeUnit.SECONDS.toMillis(10));
+            assertTrue("Invalidation waited for the node", !invalidator.isAlive());
+        } finally {
+            release.countDown();
+            stuck.join();
+        }
+    }
+
+    @Test
+    public void invalidationDropsTheShadowValue() throws Exception {
+        SysfsNode node = SysfsNode.get(SHARED);
+        SysfsNode.setSkipRedundantWrites(true);
+        try {
+            node.writeInt(5);
+            // Reset behind our back, e.g. across suspend
+            mBackend.put(SHARED, "0");
+            node.writeInt(5);
+            assertEquals("0", mBackend.get(SHARED));
+            node.invalidate();
+            node.writeInt(5);
+            assertEquals("5", mBackend.get(SHARED));
+
+            mBackend.put(SHARED, "0");
+            SysfsNode.invalidateAll();
+            node.writeInt(5);
+            assertEquals("5", mBackend.get(SHARED));
+        } finally {
+            SysfsNode.setSkipRedundantWrites(false);
+        }
+    }
+
+    private interface Body {
+        void run(int thread) throws Exception;
+    }
+
+    private static void runThreads(Body body) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            final int index = t;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    body.run(index);
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+    }
+
+    /**
+     * Records whether the backend was ever called for a path while another
+     * call for the same path was still running.
+     */
+    private static final class OverlapCheckingBackend implements NodeBackend {
+        private final NodeBackend mDelegate;
+        private final ConcurrentHashMap<String, AtomicInteger> mActive =
+                new ConcurrentHashMap<>();
+        final AtomicReference<String> mOverlap = new AtomicReference<>();
+
+        OverlapCheckingBackend(NodeBackend delegate) {
+            mDelegate = delegate;
+        }
+
+        private void enter(String path) {
+            if (mActive.computeIfAbsent(path, key -> new AtomicInteger()).incrementAndGet() > 1) {
+                mOverlap.compareAndSet(null, path);
+            }
+            // Widen the window for any overlap
+            Thread.yield();
+        }
+
+        private void exit(String path) {
+            mActive.get(path).decrementAndGet();
+        }
+
+        @Override
+        public int read(String path, ByteBuffer dst) throws IOException {
+            enter(path);
+            try {
+                return mDelegate.read(path, dst);
+            } finally {
+                exit(path);
+            }
+        }
+
+        @Override
+        public void write(String path, ByteBuffer src) throws IOException {
+            enter(path);
+            try {
+                mDelegate.write(path, src);
+            } finally {
+                exit(path);
+            }
+        }
+
+        @Override
+        public boolean exists(String path) {
+            return mDelegate.exists(path);
+        }
+
+        @Override
+        public boolean isReadable(String path) {
+            return mDelegate.isReadable(path);
+        }
+
+        @Override
+        public boolean isWritable(String path) {
+            return mDelegate.isWritable(path);
+        }
+
+        @Override
+        public void reset(String path) {
+            mDelegate.reset(path);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2018 The LineageOS Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.lineageos.hardware;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ramps driven by a fake clock and a fake scheduler, so every step is
+ * deterministic.
+ */
+public class TransitionEngineTest {
+
+    /* One step every 10ms */
+    private static final int RATE = 100;
+
+    private long mNow;
+    private final List<Scheduled> mScheduled = new ArrayList<>();
+    private final List<Integer> mWritten = new ArrayList<>();
+    private boolean mAccept = true;
+
+    private TransitionEngine mEngine;
+
+    private final class Scheduled {
+        final FutureTask<Void> mTask;
+        final long mDueNanos;
+
+        Scheduled(Runnable task, long delayNanos) {
+            mTask = new FutureTask<>(task, null);
+            mDueNanos = mNow + delayNanos;
+        }
+    }
+
+    @Before
+    public void setUp() {
+        mEngine = new TransitionEngine(1, RATE, value -> {
+            mWritten.add(value[0]);
+            return mAccept;
+        }, () -> mNow, this::schedule);
+    }
+
+    @Test
+    public void rampsToTheTarget() {
+        start(100, 100);
+        advance(100);
+        assertEquals(steps(0, 100, 10), mWritten);
+        assertFalse(mEngine.isRunning());
+        advance(200);
+        assertEquals(11, mWritten.size());
+    }
+
+    @Test
+    public void retargetsFromTheCurrentPosition() {
+        start(100, 100);
+        advance(50);
+        assertEquals(steps(0, 50, 10), mWritten);
+
+        // Back down from 50, within the same chain of steps
+        start(0, 100);
+        assertEquals(1, pending());
+        advance(150);
+        List<Integer> expected = steps(0, 50, 10);
+        expected.addAll(steps(45, 0, -5));
+        assertEquals(expected, mWritten);
+        assertFalse(mEngine.isRunning());
+    }
+
+    @Test
+    public void cancelStopsWhereItIs() {
+        start(100, 100);
+        advance(30);
+        mEngine.cancel();
+        assertFalse(mEngine.isRunning());
+        advance(200);
+        assertEquals(steps(0, 30, 10), mWritten);
+        assertEquals(0, pending());
+
+        // A new transition starts from the hardware value again
+        start(50, 0);
+        advance(300);
+        List<Integer> expected = steps(0, 30, 10);
+        expected.add(50);
+        assertEquals(expected, mWritten);
+    }
+
+    @Test
+    public void stopsWhenTheHardwareRefuses() {
+        start(100, 100);
+        mAccept = false;
+        advance(0);
+        assertFalse(mEngine.isRunning());
+        advance(200);
+        assertEquals(steps(0, 0, 1), mWritten);
+    }
+
+    @Test
+    public void stepsAreNeverFasterThanTheRate() {
+        start(1000, 1000);
+        advance(1000);
+        assertTrue(mWritten.size() <= RATE + 1);
+        assertEquals(1000, (int) mWritten.get(mWritten.size() - 1));
+    }
+
+    private void start(int target, long durationMillis) {
+        mEngine.start(new int[] { target }, durationMillis, current -> {
+            current[0] = 0;
+            return true;
+        });
+    }
+
+    private Future<?> schedule(Runnable task, long delayNanos) {
+        Scheduled scheduled = new Scheduled(task, delayNanos);
+        mScheduled.add(scheduled);
+        return scheduled.mTask;
+    }
+
+    /**
+     * Move the clock forward to the given time, running every step that
+     * comes due on the way at its due time.
+     */
+    private void advance(long millis) {
+        long target = TimeUnit.MILLISECONDS.toNanos(millis);
+        while (true) {
+            Scheduled next = null;
+            for (Scheduled scheduled : mScheduled) {
+                if (scheduled.mDueNanos <= target
+                        && (next == null || scheduled.mDueNanos < next.mDueNanos)) {
+                    next = scheduled;
+                }
+            }
+            if (next == null) {
+                break;
+            }
+            mScheduled.remove(next);
+            mNow = Math.max(mNow, next.mDueNanos);
+            next.mTask.run();
+        }
+        mNow = Math.max(mNow, target);
+    }
+
+    private int pending() {
+        int count = 0;
+        for (Iterator<Scheduled> it = mScheduled.iterator(); it.hasNext(); ) {
+            if (!it.next().mTask.isCancelled()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return from, from + step and so on up to and including to
+     */
+    private static List<Integer> steps(int from, int to, int step) {
+        List<Integer> list = new ArrayList<>();
+        for (int value = from; step > 0 ? value <= to : value >= to; value += step) {
+            list.add(value);
+        }
+        return list;
+    }
+}